@@ -0,0 +1,102 @@
+import java.util.*;
+import peersim.config.Configuration;
+
+/* Builds the peers, jobs, resources and messages the benchmarks work on, the
+ * way NetInit and PeerProtocol build them during a simulation.
+ */
+public class BenchData 
+{
+	/* the configuration of script/genConfig.sh, then the options, given as
+	 * key, value, key, value... */
+	public static void configure(int partSize, String... options)
+	{
+		Properties props = new Properties();
+		props.setProperty("protocol.tr", "UniformRandomTransport");
+		props.setProperty("protocol.tr.mindelay", "7912");
+		props.setProperty("protocol.tr.maxdelay", "7912");
+		props.setProperty("protocol.peer", PeerProtocol.class.getName());
+		props.setProperty("protocol.peer.transport", "tr");
+		props.setProperty("protocol.peer.partSize", Integer.toString(partSize));
+		props.setProperty("protocol.peer.sleepLength", "1000");
+		props.setProperty("protocol.peer.callbackInterval", "1000");
+		props.setProperty("protocol.peer.callbackNumTry", "3");
+		props.setProperty("protocol.peer.maxNumTry", "5");
+		props.setProperty("init.create", NetInit.class.getName());
+		props.setProperty("init.create.protocol", "peer");
+		props.setProperty("init.create.partSize", Integer.toString(partSize));
+		props.setProperty("init.create.netSpeed", "1000000000");
+		props.setProperty("init.create.latency", "100");
+		props.setProperty("init.create.sendOverhead", "50");
+		props.setProperty("init.create.recvOverhead", "50");
+		props.setProperty("init.create.jobProcTime", "1000");
+		props.setProperty("init.create.kvsProcTime", "1000");
+		props.setProperty("init.create.workloadFile", "none");
+		for (int i = 0; i + 1 < options.length; i += 2)
+		{
+			props.setProperty(options[i], options[i + 1]);
+		}
+		Configuration.setConfig(props);
+	}
+	
+	/* numNode peers set up by NetInit, with room for numJobs jobs */
+	public static BenchPeer[] peers(int numNode, int numJobs)
+	{
+		NetInit init = new NetInit("init.create");
+		SimContext ctx = init.initNetwork(numNode);
+		ctx.jobTable = new JobTable(numJobs);
+		BenchPeer[] peers = new BenchPeer[numNode];
+		for (int i = 0; i < numNode; i++)
+		{
+			peers[i] = new BenchPeer("protocol.peer");
+			init.initPeer(ctx, peers[i], i);
+		}
+		return peers;
+	}
+	
+	/* a resource holding the nodes [first, first + num) */
+	public static Resource resource(int first, int num)
+	{
+		Resource res = new Resource();
+		for (int i = first; i < first + num; i++)
+		{
+			res.add(i);
+		}
+		return res;
+	}
+	
+	/* a job over numNode nodes taken from partitions of partSize nodes,
+	 * in the order allocateRes builds its nodelist: the partitions in 
+	 * random order, the nodes of a partition in the order of node ids */
+	public static Job job(int numNode, int partSize, Random rand)
+	{
+		Job job = new Job();
+		job.client = 0;
+		job.index = 0;
+		job.jobId = "node-0 0";
+		job.prefix = "srun";
+		job.numNodeRequired = numNode;
+		job.numCoresRequiredPerNode = -1;
+		job.dir = "/bin/";
+		job.cmd = "sleep";
+		job.argv = "0";
+		job.nodelist = new IntList(numNode);
+		job.ctrls = new IntList();
+		job.ctrlNodelist = new LinkedList<Resource>();
+		job.resBackup = new Resource();
+		ArrayList<Integer> parts = new ArrayList<Integer>();
+		for (int i = 0; i * partSize < numNode; i++)
+		{
+			parts.add(i);
+		}
+		Collections.shuffle(parts, rand);
+		for (int i = 0; i < parts.size(); i++)
+		{
+			int ctrl = parts.get(i) * partSize;
+			Resource res = resource(ctrl, Math.min(partSize, numNode - ctrl));
+			job.ctrls.add(ctrl);
+			job.ctrlNodelist.add(res);
+			res.addTo(job.nodelist);
+		}
+		return job;
+	}
+}
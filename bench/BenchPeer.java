@@ -0,0 +1,18 @@
+/* A PeerProtocol whose events are counted and dropped instead of being put
+ * on the event queue of PeerSim, so that its methods can be run outside of
+ * a simulation and timed without the cost of the queue.
+ */
+public class BenchPeer extends PeerProtocol 
+{
+	public long numEvents;
+	
+	public BenchPeer(String prefix)
+	{
+		super(prefix);
+	}
+	
+	public void schedule(long delay, Object event, int destId)
+	{
+		numEvents++;
+	}
+}
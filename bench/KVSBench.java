@@ -0,0 +1,68 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* procKVSEventAct, the work of a zht server, for each operation on the 
+ * resource of a partition. The compare and swap always succeeds, as it 
+ * swaps in a resource equal to the one stored.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KVSBench 
+{
+	@Param({"64", "1024", "16384"})
+	public int partSize;
+	
+	@Param({"false", "true"})
+	public boolean versionedCswap;
+	
+	private BenchPeer pp;
+	private Pair insertPair;
+	private Pair lookupPair;
+	private Pair cswapPair;
+	private Pair callbackPair;
+	
+	@Setup
+	public void setup()
+	{
+		BenchData.configure(partSize, "protocol.peer.versionedCswap", 
+				Boolean.toString(versionedCswap));
+		pp = BenchData.peers(partSize, 1)[0];
+		
+		Resource res = BenchData.resource(0, partSize);
+		insertPair = new Pair(0, res, null, -1, KVSOp.INSERT, KVSPurpose.INSERT_RESOURCE);
+		pp.procKVSEventAct(insertPair);
+		lookupPair = new Pair(0, null, null, 0, KVSOp.LOOKUP, KVSPurpose.LOOKUP_RESOURCE);
+		cswapPair = new Pair(0, res, BenchData.resource(0, partSize), 0, 
+				KVSOp.CSWAP, KVSPurpose.ALLOCATE_RESOURCE);
+		pp.hmData.put("node-0 0Fin", "done");
+		callbackPair = new Pair("node-0 0Fin", null, null, 0, 
+				KVSOp.CALLBACK, KVSPurpose.WAIT_FOR_NOTIFICATION);
+	}
+	
+	@Benchmark
+	public KVSReturnObj insert()
+	{
+		return pp.procKVSEventAct(insertPair);
+	}
+	
+	@Benchmark
+	public KVSReturnObj lookup()
+	{
+		return pp.procKVSEventAct(lookupPair);
+	}
+	
+	@Benchmark
+	public KVSReturnObj cswap()
+	{
+		cswapPair.version = pp.getVersion(cswapPair.key);
+		return pp.procKVSEventAct(cswapPair);
+	}
+	
+	@Benchmark
+	public KVSReturnObj callback()
+	{
+		return pp.procKVSEventAct(callbackPair);
+	}
+}
@@ -0,0 +1,54 @@
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* sendMsg on a job launch message and on a compare and swap of the resource
+ * of a partition, in each msgSizeMode. Sizing the message is most of what 
+ * sendMsg does, the event it schedules is dropped by BenchPeer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MsgSizeBench 
+{
+	@Param({"serialize", "cached", "analytic"})
+	public String mode;
+	
+	@Param({"64", "1024", "16384"})
+	public int partSize;
+	
+	@Param({"16", "256", "4096"})
+	public int nodelistLength;
+	
+	private BenchPeer pp;
+	private Message jobMsg;
+	private Message cswapMsg;
+	
+	@Setup
+	public void setup()
+	{
+		BenchData.configure(partSize, "init.create.msgSizeMode", mode);
+		pp = BenchData.peers(partSize, 1)[0];
+		Job job = BenchData.job(nodelistLength, partSize, new Random(1));
+		jobMsg = new Message(0, 1, MsgType.TRANSMIT_JOB, job);
+		Resource res = BenchData.resource(0, partSize);
+		Pair pair = new Pair(0, res, BenchData.resource(0, partSize / 2), 0, 
+				KVSOp.CSWAP, KVSPurpose.ALLOCATE_RESOURCE);
+		cswapMsg = new Message(0, 0, MsgType.KVS, pair);
+	}
+	
+	@Benchmark
+	public long jobMsg()
+	{
+		pp.sendMsg(jobMsg, 0);
+		return pp.numEvents;
+	}
+	
+	@Benchmark
+	public long cswapMsg()
+	{
+		pp.sendMsg(cswapMsg, 0);
+		return pp.numEvents;
+	}
+}
@@ -0,0 +1,66 @@
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* The launch of a job along the tree: launchJob sorts the nodelist and 
+ * sends the job to the first node, then every node of the tree sends it to
+ * each of its children with transmitJob, finding its position in the 
+ * nodelist every time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodelistBench 
+{
+	@Param({"64", "1024"})
+	public int partSize;
+	
+	@Param({"16", "256", "4096"})
+	public int nodelistLength;
+	
+	@Param({"2", "8"})
+	public int fanOut;
+	
+	private BenchPeer[] peers;
+	private Job job;
+	private IntList shuffled;
+	
+	@Setup
+	public void setup()
+	{
+		BenchData.configure(partSize, "init.create.launchFanOut", Integer.toString(fanOut));
+		int numPart = (nodelistLength + partSize - 1) / partSize;
+		peers = BenchData.peers(numPart * partSize, 1);
+		job = BenchData.job(nodelistLength, partSize, new Random(1));
+		peers[0].ctx.jobTable.put(job);
+		shuffled = new IntList(nodelistLength);
+		shuffled.addAll(job.nodelist);
+		job.nodelist.sort();
+	}
+	
+	@Benchmark
+	public long launchJob()
+	{
+		job.nodelist.clear();
+		job.nodelist.addAll(shuffled);
+		peers[0].launchJob(job);
+		return peers[0].numEvents;
+	}
+	
+	@Benchmark
+	public long transmitJob()
+	{
+		long numEvents = 0;
+		for (int i = 0; i < job.nodelist.size(); i++)
+		{
+			BenchPeer pp = peers[job.nodelist.get(i)];
+			for (int c = 0; c < fanOut; c++)
+			{
+				pp.transmitJob(false, job, c);
+			}
+			numEvents += pp.numEvents;
+		}
+		return numEvents;
+	}
+}
@@ -0,0 +1,65 @@
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* allocateRes and releaseResCswap on the resource of a partition, i.e. 
+ * splitResource and mergeResource with the compare and swap each sends. 
+ * allocateRes takes half of the nodes a lookup saw, releaseResCswap gives 
+ * them back to the other half.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResourceBench 
+{
+	@Param({"64", "1024", "16384"})
+	public int partSize;
+	
+	private BenchPeer pp;
+	private KVSReturnObj lookupRet;
+	private KVSReturnObj releaseRet;
+	
+	@Setup
+	public void setup()
+	{
+		BenchData.configure(partSize);
+		pp = BenchData.peers(partSize, 2)[0];
+		
+		Job allocJob = BenchData.job(partSize / 2, partSize, new Random(1));
+		allocJob.index = 0;
+		allocJob.nodelist.clear();
+		allocJob.ctrls.clear();
+		allocJob.ctrlNodelist.clear();
+		pp.ctx.jobTable.put(allocJob);
+		lookupRet = new KVSReturnObj();
+		lookupRet.key = 0;
+		lookupRet.value = BenchData.resource(0, partSize);
+		lookupRet.identifier = allocJob.index;
+		lookupRet.forWhat = KVSPurpose.LOOKUP_RESOURCE;
+		
+		Job releaseJob = BenchData.job(partSize / 2, partSize, new Random(1));
+		releaseJob.index = 1;
+		releaseJob.ctrlNodelist.set(0, BenchData.resource(partSize / 2, partSize / 2));
+		pp.ctx.jobTable.put(releaseJob);
+		releaseRet = new KVSReturnObj();
+		releaseRet.key = 0;
+		releaseRet.value = BenchData.resource(0, partSize / 2);
+		releaseRet.identifier = releaseJob.index;
+		releaseRet.forWhat = KVSPurpose.RELEASE_RESOURCE1;
+	}
+	
+	@Benchmark
+	public Resource allocateRes()
+	{
+		pp.allocateRes(lookupRet);
+		return pp.ctx.jobTable.get(0).resBackup;
+	}
+	
+	@Benchmark
+	public long releaseResCswap()
+	{
+		pp.releaseResCswap(releaseRet);
+		return pp.numEvents;
+	}
+}
@@ -0,0 +1,34 @@
+# builds a runnable jar of the benchmarks in bench/
+# JMH does not take benchmarks in the default package, so the simulator and
+# the benchmarks are copied into the package simbench and compiled together
+# libDir holds the PeerSim jars and jmh-core, jmh-generator-annprocess,
+# jopt-simple and commons-math3
+libDir=$1
+srcBase=$2
+benchBase=$3
+jarFile=$4
+
+libDir=$(cd $libDir && pwd)
+jarFile=$(cd $(dirname $jarFile) && pwd)/$(basename $jarFile)
+workDir=$(mktemp -d)
+
+mkdir -p $workDir/src/simbench $workDir/classes
+for f in $srcBase/*.java $benchBase/*.java
+do
+	{ echo "package simbench;"; cat $f; } > $workDir/src/simbench/$(basename $f)
+done
+
+cp=$(ls $libDir/*.jar | tr '\n' ':')
+javac -cp $cp -d $workDir/classes $workDir/src/simbench/*.java || exit 1
+
+# the libraries go into the jar as well, but not their manifests
+cd $workDir/classes
+for j in $libDir/*.jar
+do
+	unzip -qo $j -x 'META-INF/*'
+done
+cd - > /dev/null
+jar cfe $jarFile org.openjdk.jmh.Main -C $workDir/classes .
+
+rm -rf $workDir
+echo "wrote $jarFile"
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* Reads a binary workload written by WorkloadConverter. The file starts with
+ * a header and a table of the distinct commands:
+ *   int magic, int version, int numJobs, int numCmds,
+ *   numCmds * (UTF prefix, UTF dir, UTF cmd, UTF argv)
+ * followed by one fixed size record per job:
+ *   int numNodeRequired, int numCoresRequiredPerNode, long duration, int cmdId
+ * The records are memory mapped and read in place, nothing is parsed.
+ */
+public class BinaryWorkloadSource implements WorkloadSource
+{
+	public static final int MAGIC = 0x534A4C57;	// "SJLW"
+	public static final int VERSION = 1;
+	public static final int RECORD_SIZE = 4 + 4 + 8 + 4;
+	
+	private MappedByteBuffer buf;
+	private int numJobs;
+	private JobDesc[] cmds;
+	
+	public BinaryWorkloadSource(String file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			if (raf.readInt() != MAGIC)
+			{
+				throw new IOException("Not a binary workload file:" + file);
+			}
+			int version = raf.readInt();
+			if (version != VERSION)
+			{
+				throw new IOException("Unsupported binary workload version:" + version);
+			}
+			numJobs = raf.readInt();
+			cmds = new JobDesc[raf.readInt()];
+			for (int i = 0; i < cmds.length; i++)
+			{
+				cmds[i] = new JobDesc();
+				cmds[i].prefix = raf.readUTF();
+				cmds[i].dir = raf.readUTF();
+				cmds[i].cmd = raf.readUTF();
+				cmds[i].argv = raf.readUTF();
+			}
+			long start = raf.getFilePointer();
+			long length = (long)numJobs * RECORD_SIZE;
+			if (start + length > raf.length() || length > Integer.MAX_VALUE)
+			{
+				throw new IOException("Truncated or too large binary workload file:" + file);
+			}
+			buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, length);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	public int numJobs()
+	{
+		return numJobs;
+	}
+	
+	public JobDesc getJob(int index)
+	{
+		if (index < 0 || index >= numJobs)
+		{
+			throw new IndexOutOfBoundsException("Index:" + index + ", Size:" + numJobs);
+		}
+		int pos = index * RECORD_SIZE;
+		JobDesc cmd = cmds[buf.getInt(pos + 16)];
+		JobDesc desc = new JobDesc();
+		desc.numNodeRequired = buf.getInt(pos);
+		desc.numCoresRequiredPerNode = buf.getInt(pos + 4);
+		desc.duration = buf.getLong(pos + 8);
+		desc.prefix = cmd.prefix;
+		desc.dir = cmd.dir;
+		desc.cmd = cmd.cmd;
+		desc.argv = cmd.argv;
+		return desc;
+	}
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+import peersim.core.CommonState;
+
+/* Picks the controller to ask for more nodes when a job does not fit in the
+ * ones it has. Every controller keeps what it last saw of the free nodes of
+ * the others, taken from the resource values that come back with its own
+ * lookups and compare and swaps, so the view costs no extra message.
+ * random    - any controller, as before
+ * twoChoice - the one with more known free nodes out of two random ones
+ * bestFit   - the one with the fewest known free nodes that still covers the
+ *             nodes needed, or else the one with the most. After a lookup
+ *             that came back empty, and so after the job gave its nodes
+ *             back, the pick is random: the controllers see the same free
+ *             nodes, and large jobs would otherwise keep splitting the
+ *             cluster, give up and start over in lockstep
+ * A controller never seen is assumed to have its whole partition free.
+ */
+public class CtrlSelector
+{
+	public static final int RANDOM = 0;
+	public static final int TWO_CHOICE = 1;
+	public static final int BEST_FIT = 2;
+
+	private static final String[] NAMES = {"random", "twoChoice", "bestFit"};
+
+	private int[] memList;
+	private int partSize;
+	private int strategy;
+	private int[] knownFree;	// indexed by the partition of the controller
+
+	public CtrlSelector(int[] memList, int partSize, String strategy)
+	{
+		this.strategy = Arrays.asList(NAMES).indexOf(strategy);
+		if (this.strategy == -1)
+		{
+			throw new IllegalArgumentException("Unknown controller selection:" + strategy);
+		}
+		this.memList = memList;
+		this.partSize = partSize;
+		knownFree = new int[memList.length];
+		for (int i = 0; i < knownFree.length; i++)
+		{
+			knownFree[i] = partSize;
+		}
+	}
+
+	public static String name(int strategy)
+	{
+		return NAMES[strategy];
+	}
+
+	public String strategy()
+	{
+		return NAMES[strategy];
+	}
+
+	public void observe(int ctrlId, Resource res)
+	{
+		knownFree[ctrlId / partSize] = res.numAvailNode;
+	}
+
+	/* the free nodes of all the controllers, as far as they are known */
+	public int knownFree()
+	{
+		int sum = 0;
+		for (int i = 0; i < knownFree.length; i++)
+		{
+			sum += knownFree[i];
+		}
+		return sum;
+	}
+
+	public int select(int numNodeNeeded, boolean lastEmpty)
+	{
+		switch (strategy)
+		{
+			case TWO_CHOICE:
+				int first = CommonState.r.nextInt(memList.length);
+				int second = CommonState.r.nextInt(memList.length);
+				return memList[knownFree[second] > knownFree[first] ? second : first];
+			case BEST_FIT:
+				if (!lastEmpty)
+				{
+					return memList[bestFit(numNodeNeeded)];
+				}
+				return memList[CommonState.r.nextInt(memList.length)];
+			default:	// RANDOM
+				return memList[CommonState.r.nextInt(memList.length)];
+		}
+	}
+
+	/* ties are broken at random, otherwise every controller would start with
+	 * the same one */
+	private int bestFit(int numNodeNeeded)
+	{
+		int best = -1, numTie = 0;
+		boolean fits = false;
+		for (int i = 0; i < knownFree.length; i++)
+		{
+			int free = knownFree[i];
+			if (free == 0)
+			{
+				continue;
+			}
+			boolean iFits = free >= numNodeNeeded;
+			int cmp;
+			if (best == -1 || iFits != fits)
+			{
+				cmp = best == -1 || iFits ? 1 : -1;
+			}
+			else if (fits)
+			{
+				cmp = knownFree[best] - free;	// the tighter fit
+			}
+			else
+			{
+				cmp = free - knownFree[best];	// the most nodes
+			}
+			if (cmp > 0)
+			{
+				best = i;
+				fits = iFits;
+				numTie = 1;
+			}
+			else if (cmp == 0 && CommonState.r.nextInt(++numTie) == 0)
+			{
+				best = i;
+			}
+		}
+		if (best == -1)	// all seen empty, whatever is freed since is unknown
+		{
+			return CommonState.r.nextInt(memList.length);
+		}
+		return best;
+	}
+}
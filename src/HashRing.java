@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+/* A consistent hash ring of the zht servers. Every server is placed on the
+ * ring at numVirtual points, hashed from its node name, and a key belongs to
+ * the server of the first point at or after the hash of the key. A point is
+ * kept as a long, the position in the high and the server id in the low 32
+ * bits, so the ring is one sorted array searched without allocating.
+ */
+public class HashRing
+{
+	private long[] points;
+	private int numVirtual;
+
+	public HashRing(int[] servers, String[] nodeNames, int numVirtual)
+	{
+		this.numVirtual = numVirtual;
+		points = new long[servers.length * numVirtual];
+		int num = 0;
+		for (int i = 0; i < servers.length; i++)
+		{
+			for (int j = 0; j < numVirtual; j++)
+			{
+				int pos = mix((nodeNames[servers[i]] + "#" + j).hashCode());
+				points[num++] = ((long)pos << 32) | servers[i];
+			}
+		}
+		Arrays.sort(points);
+	}
+
+	/* the server of a key, given the hash code of the key */
+	public int server(int hashCode)
+	{
+		long target = (long)mix(hashCode) << 32;
+		int low = 0, high = points.length;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (points[mid] < target)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		if (low == points.length)	// wrap around
+		{
+			low = 0;
+		}
+		return (int)points[low];
+	}
+
+	public int numVirtual()
+	{
+		return numVirtual;
+	}
+
+	/* the finalizer of MurmurHash3, String.hashCode alone leaves similar
+	 * names close to each other on the ring */
+	private static int mix(int h)
+	{
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
@@ -0,0 +1,92 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+/* A growable list of ints, used to hold node and controller ids
+ * without boxing them or keeping them as "node-N" strings.
+ */
+public class IntList implements Serializable
+{
+	int size;
+	int[] data;
+
+	public IntList()
+	{
+		this(4);
+	}
+
+	public IntList(int capacity)
+	{
+		size = 0;
+		data = new int[capacity > 0 ? capacity : 1];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int get(int i)
+	{
+		if (i >= size)
+		{
+			throw new IndexOutOfBoundsException("Index:" + i + ", Size:" + size);
+		}
+		return data[i];
+	}
+
+	public int getFirst()
+	{
+		return get(0);
+	}
+
+	public void add(int value)
+	{
+		ensureCapacity(size + 1);
+		data[size++] = value;
+	}
+
+	public void addAll(IntList list)
+	{
+		ensureCapacity(size + list.size);
+		System.arraycopy(list.data, 0, data, size, list.size);
+		size += list.size;
+	}
+
+	public int removeFirst()
+	{
+		int value = get(0);
+		System.arraycopy(data, 1, data, 0, size - 1);
+		size--;
+		return value;
+	}
+
+	public int indexOf(int value)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			if (data[i] == value)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public void sort()
+	{
+		Arrays.sort(data, 0, size);
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > data.length)
+		{
+			data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+		}
+	}
+}
@@ -3,8 +3,9 @@ import java.io.Serializable;
 
 public class Job implements Serializable
 {
-	String client;
+	int client;
 	String jobId;
+	int index;	// the position in the workload, and in SimContext.jobTable
 	String prefix;
 	int numNodeRequired;
 	int numCoresRequiredPerNode;
@@ -13,17 +14,22 @@ public class Job implements Serializable
 	String dir;
 	String cmd;
 	String argv;
-	LinkedList<String> nodelist;
-	LinkedList<String> ctrls;
+	/* derived from argv when the job is created, it is not sent around */
+	transient long duration;
+	IntList nodelist;
+	IntList ctrls;
 	LinkedList<Resource> ctrlNodelist;
 	
-	String ctrlBackup;
+	int ctrlBackup;
 	Resource resBackup;
 	
 	int numTry;
-	long startTime;
-	long submitTime;
-	long exeTime;
-	long finTime;
-	long backTime;
+	/* a lookup of the job came back empty, the next controller is random */
+	transient boolean lastEmpty;
+	/* the time lost in failed compare and swaps */
+	transient long cswapRetryTime;
+	/* the operations of the batches in progress that are not done yet */
+	transient int numKVSPending;
+	/* the keys the job has in the zht, removed once it is done */
+	transient ArrayList<Object> kvsKeys;
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+/* The description of a job as given in the workload, 
+ * e.g. "srun -N4 /bin/ sleep 0" 
+ */
+public class JobDesc 
+{
+	String prefix;
+	int numNodeRequired;
+	int numCoresRequiredPerNode;
+	String dir;
+	String cmd;
+	String argv;
+	long duration;	// how long the job runs (sleeps), in microseconds
+}
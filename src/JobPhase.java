@@ -0,0 +1,26 @@
+/* The phases of launching a job, timed for every job by SimContext.
+ * CSWAP_RETRY is not a phase of its own, it is the time a job lost in 
+ * compare and swaps that failed, during allocation and release.
+ */
+public class JobPhase 
+{
+	public static final int ALLOCATE = 0;		// start to all nodes allocated
+	public static final int METADATA = 1;		// zht inserts of the controllers
+	public static final int TRANSMIT = 2;		// launch tree until execution
+	public static final int EXECUTE = 3;		// execution until job done
+	public static final int RELEASE = 4;		// job done until result back
+	public static final int CSWAP_RETRY = 5;
+	public static final int NUM = 6;
+	
+	private static final String[] NAMES = {"allocate", "metadata", 
+		"transmit", "execute", "release", "cswap retry"};
+	
+	public static String name(int phase)
+	{
+		if (phase < 0 || phase >= NAMES.length)
+		{
+			return Integer.toString(phase);
+		}
+		return NAMES[phase];
+	}
+}
@@ -0,0 +1,46 @@
+/* The metadata of all jobs, indexed by the position of the job in the 
+ * workload, i.e. the jobStartIndex of its controller plus its sequence 
+ * number. The timestamps of a job are kept in columns, so they take 
+ * 48 bytes per job, and the Job itself is removed once it is done.
+ */
+public class JobTable 
+{
+	Job[] jobs;
+	long[] startTime;
+	long[] allocTime;
+	long[] submitTime;
+	long[] exeTime;
+	long[] finTime;
+	long[] backTime;
+	
+	public JobTable(int numJobs)
+	{
+		jobs = new Job[numJobs];
+		startTime = new long[numJobs];
+		allocTime = new long[numJobs];
+		submitTime = new long[numJobs];
+		exeTime = new long[numJobs];
+		finTime = new long[numJobs];
+		backTime = new long[numJobs];
+	}
+	
+	public int size()
+	{
+		return jobs.length;
+	}
+	
+	public Job get(int index)
+	{
+		return jobs[index];
+	}
+	
+	public void put(Job job)
+	{
+		jobs[job.index] = job;
+	}
+	
+	public void remove(int index)
+	{
+		jobs[index] = null;
+	}
+}
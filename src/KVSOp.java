@@ -0,0 +1,24 @@
+/* The operations supported by the simulated zht server */
+public class KVSOp 
+{
+	public static final int INSERT = 0;
+	public static final int LOOKUP = 1;
+	public static final int CSWAP = 2;
+	public static final int CALLBACK = 3;
+	/* the value is a Pair[] of operations on one server, the reply holds
+	 * a KVSReturnObj[] with the result of each */
+	public static final int BATCH = 4;
+	public static final int NUM = 5;
+	
+	private static final String[] NAMES = {"insert", "lookup", 
+		"compare and swap", "callback", "batch"};
+	
+	public static String name(int op)
+	{
+		if (op < 0 || op >= NAMES.length)
+		{
+			return Integer.toString(op);
+		}
+		return NAMES[op];
+	}
+}
@@ -0,0 +1,37 @@
+/* What a zht request is issued for, it tells the client how to 
+ * continue once the request returns.
+ */
+public class KVSPurpose 
+{
+	public static final int INSERT_RESOURCE = 0;
+	public static final int LOOKUP_RESOURCE = 1;
+	public static final int ALLOCATE_RESOURCE = 2;
+	/* releasing resources after a job cannot be satisfied */
+	public static final int RELEASE_RESOURCE0 = 3;
+	/* releasing resources after finishing a job */
+	public static final int RELEASE_RESOURCE1 = 4;
+	public static final int JOB_ORIGIN_CTRL = 5;
+	public static final int MARK_SELF = 6;
+	public static final int JOB_CTRLS = 7;
+	public static final int JOB_CTRL_NODELIST = 8;
+	public static final int NOTIFY_JOB_FIN = 9;
+	public static final int WAIT_FOR_NOTIFICATION = 10;
+	public static final int RECHECK_CALLBACK = 11;
+	/* all the inserts of a job before its launch, in batches */
+	public static final int JOB_METADATA = 12;
+	
+	private static final String[] NAMES = {"insert resource", "lookup resource", 
+		"allocate resource", "release resource0", "release resource1", 
+		"job origin ctrl", "mark self", "job ctrls", "job ctrl nodelist", 
+		"notify job fin", "wait for notification", "recheck callback", 
+		"job metadata"};
+	
+	public static String name(int purpose)
+	{
+		if (purpose < 0 || purpose >= NAMES.length)
+		{
+			return Integer.toString(purpose);
+		}
+		return NAMES[purpose];
+	}
+}
@@ -4,8 +4,10 @@ public class KVSReturnObj implements Serializable
 {
 	Object key;
 	Object value;
-	String identifier;
-	String type;
-	String forWhat;
+	int identifier;
+	int type;
+	int forWhat;
 	boolean result;
+	long version;
+	transient long sendTime;	// copied from the Pair
 }
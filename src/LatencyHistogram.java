@@ -0,0 +1,98 @@
+/* A histogram of latencies with log-linear buckets: values below 64 have a
+ * bucket each, above that every power of two is cut into 32 buckets, so a
+ * percentile is off by at most 1/32 of its value. Recording a value only
+ * increments a counter, nothing is allocated.
+ */
+public class LatencyHistogram 
+{
+	private static final int SUB_BITS = 6;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int HALF = SUB >> 1;
+	private static final int NUM_BUCKETS = SUB + (64 - SUB_BITS) * HALF;
+	
+	private long[] counts;
+	private long count;
+	private long sum;
+	private long max;
+	
+	public LatencyHistogram()
+	{
+		counts = new long[NUM_BUCKETS];
+	}
+	
+	public static int bucket(long value)
+	{
+		if (value < SUB)
+		{
+			return (int)value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		return SUB + (shift - 1) * HALF + (int)(value >>> shift) - HALF;
+	}
+	
+	/* the middle of the values that fall into the bucket */
+	public static long bucketValue(int bucket)
+	{
+		if (bucket < SUB)
+		{
+			return bucket;
+		}
+		int shift = (bucket - SUB) / HALF + 1;
+		long low = (long)((bucket - SUB) % HALF + HALF) << shift;
+		return low + (1L << (shift - 1));
+	}
+	
+	public void record(long value)
+	{
+		if (value < 0)
+		{
+			value = 0;
+		}
+		counts[bucket(value)]++;
+		count++;
+		sum += value;
+		if (value > max)
+		{
+			max = value;
+		}
+	}
+	
+	public long count()
+	{
+		return count;
+	}
+	
+	public double mean()
+	{
+		return count == 0 ? 0 : (double)sum / (double)count;
+	}
+	
+	public long max()
+	{
+		return max;
+	}
+	
+	/* p is between 0 and 1 */
+	public long percentile(double p)
+	{
+		if (count == 0)
+		{
+			return 0;
+		}
+		long rank = (long)Math.ceil(p * count);
+		if (rank < 1)
+		{
+			rank = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{
+				return Math.min(bucketValue(i), max);
+			}
+		}
+		return max;
+	}
+}
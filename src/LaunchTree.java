@@ -0,0 +1,166 @@
+import java.util.HashMap;
+
+/* The tree a job is launched along: the nodes of the nodelist in heap order,
+ * the children of position pos being fanOut * pos + 1 to fanOut * pos + fanOut.
+ * A fanOut of 0 picks the fan-out for each job size, the one that gets the
+ * job to its last node soonest with the network parameters, given that a
+ * node reaches its first child after firstHop and every other one gap later.
+ * With treeAck a node sends to all its children at once, and acks its parent
+ * once its whole subtree has the job, instead of each node acking as soon as
+ * it has the job and its parent waiting for that ack to send to the next.
+ * With treeFinish the nodes report the end of the job up the same tree,
+ * instead of each telling the first node.
+ */
+public class LaunchTree
+{
+	public static final int ADAPTIVE = 0;
+	private static final int MAX_FANOUT = 64;
+
+	private int fanOut;
+	private boolean treeAck;
+	private boolean treeFinish;
+	private long firstHop;
+	private long gap;
+	private HashMap<Integer, Integer> adaptive;
+
+	public LaunchTree(int fanOut, boolean treeAck, boolean treeFinish, long sendOverhead, 
+			long recvOverhead, long latency)
+	{
+		if (fanOut < 0)
+		{
+			throw new IllegalArgumentException("Negative launch fan-out:" + fanOut);
+		}
+		this.fanOut = fanOut;
+		this.treeAck = treeAck;
+		this.treeFinish = treeFinish;
+		if (treeAck)	// the sends to the children go one after the other
+		{
+			firstHop = recvOverhead + sendOverhead + latency;
+			gap = sendOverhead;
+		}
+		else
+		{
+			/* a node acks the job, then sends it to its first child, and sends
+			 * it to the next one when the ack of the previous one is back */
+			firstHop = recvOverhead + 2 * sendOverhead + latency;
+			gap = 2 * (recvOverhead + sendOverhead + latency);
+		}
+		adaptive = new HashMap<Integer, Integer>();
+	}
+
+	public boolean treeAck()
+	{
+		return treeAck;
+	}
+
+	public boolean treeFinish()
+	{
+		return treeFinish;
+	}
+
+	public int fanOut(int numNodes)
+	{
+		if (fanOut != ADAPTIVE)
+		{
+			return fanOut;
+		}
+		Integer best = adaptive.get(numNodes);
+		if (best == null)
+		{
+			best = 1;
+			long bestTime = launchTime(numNodes, 1);
+			for (int k = 2; k < numNodes && k <= MAX_FANOUT; k++)
+			{
+				long time = launchTime(numNodes, k);
+				if (time < bestTime)
+				{
+					best = k;
+					bestTime = time;
+				}
+			}
+			adaptive.put(numNodes, best);
+		}
+		return best;
+	}
+
+	/* the i-th child (from 0) of position pos */
+	public static int child(int pos, int k, int i)
+	{
+		return k * pos + 1 + i;
+	}
+
+	public static int parent(int pos, int k)
+	{
+		return (pos - 1) / k;
+	}
+
+	public static int numChildren(int pos, int k, int numNodes)
+	{
+		int first = child(pos, k, 0);
+		return Math.max(0, Math.min(k, numNodes - first));
+	}
+
+	/* which child of parentPos position pos is, or -1 if it is not one */
+	public static int childIndex(int pos, int parentPos, int k)
+	{
+		int i = pos - child(parentPos, k, 0);
+		return i >= 0 && i < k ? i : -1;
+	}
+
+	/* when the last of numNodes nodes has the job, from the time the first
+	 * one has it. A node at depth d whose path takes the children j1..jd is
+	 * reached at d * firstHop + (j1 + ... + jd) * gap, so only the last full
+	 * level and the largest digit sum in the partial level below it count */
+	public long launchTime(int numNodes, int k)
+	{
+		if (numNodes <= 1)
+		{
+			return 0;
+		}
+		if (k == 1)
+		{
+			return (numNodes - 1) * firstHop;
+		}
+		int depth = 0;
+		long levelSize = 1, levelStart = 0;
+		while (levelStart + levelSize <= numNodes)
+		{
+			levelStart += levelSize;
+			levelSize *= k;
+			depth++;
+		}
+		/* levels 0 to depth - 1 are full */
+		long time = (depth - 1) * (firstHop + (k - 1) * gap);
+		long numPartial = numNodes - levelStart;
+		if (numPartial > 0)
+		{
+			long partial = depth * firstHop + maxDigitSum(numPartial - 1, k, depth) * gap;
+			time = Math.max(time, partial);
+		}
+		return time;
+	}
+
+	/* the largest digit sum in base k of the numbers from 0 to max, written
+	 * with numDigits digits */
+	private static long maxDigitSum(long max, int k, int numDigits)
+	{
+		long[] digits = new long[numDigits];
+		long sum = 0;
+		for (int i = 0; i < numDigits; i++)
+		{
+			digits[i] = max % k;
+			sum += digits[i];
+			max /= k;
+		}
+		long best = sum, above = 0;
+		for (int i = numDigits - 1; i >= 0; i--)	// lower digit i, fill the rest
+		{
+			if (digits[i] > 0)
+			{
+				best = Math.max(best, above + digits[i] - 1 + (long)i * (k - 1));
+			}
+			above += digits[i];
+		}
+		return best;
+	}
+}
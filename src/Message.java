@@ -4,7 +4,7 @@ public class Message implements Serializable
 {
 	int sourceId;
 	int destId;
-	String msgType;
+	int msgType;
 	Object content;
 	
 	public Message()
@@ -13,7 +13,7 @@ public class Message implements Serializable
 	}
 	
 	public Message(int sourceId, int destId, 
-						String msgType, Object content)
+						int msgType, Object content)
 	{
 		this.sourceId = sourceId;
 		this.destId = destId;
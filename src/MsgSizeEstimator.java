@@ -0,0 +1,399 @@
+/* Estimates the number of bytes a simulated message would take on the wire,
+ * which is what SimContext.getCommOverhead charges for. Four modes are supported:
+ * serialize - run a full Java serialization pass for every message (original)
+ * cached    - exact, but memoize the size of job messages, since a job does
+ *             not change its serialized size between launch and completion
+ * analytic  - compute the size from the field contents, following the Java
+ *             serialization stream format, without allocating
+ * validate  - use the analytic size, and compare it against real
+ *             serialization on one of every validateSample messages
+ */
+
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.Writer;
+import java.util.*;
+
+public class MsgSizeEstimator
+{
+	public static final int SERIALIZE = 0;
+	public static final int CACHED = 1;
+	public static final int ANALYTIC = 2;
+	public static final int VALIDATE = 3;
+	
+	private static final String[] NAMES = {"serialize", "cached", "analytic", 
+		"validate"};
+
+	/* stream header (magic + version) */
+	private static final int STREAM_HEADER = 4;
+	/* TC_REFERENCE + handle */
+	private static final int REFERENCE = 5;
+	/* TC_NULL */
+	private static final int NULL_REF = 1;
+
+	private static final Class<?>[] CLASSES = {Message.class, Pair.class,
+		KVSReturnObj.class, Job.class, Resource.class, LinkedList.class,
+		IntList.class, int[].class, Integer.class, Number.class, long[].class,
+		Pair[].class, KVSReturnObj[].class};
+	private static final int CLS_MESSAGE = 0;
+	private static final int CLS_PAIR = 1;
+	private static final int CLS_KVSRETOBJ = 2;
+	private static final int CLS_JOB = 3;
+	private static final int CLS_RESOURCE = 4;
+	private static final int CLS_LINKEDLIST = 5;
+	private static final int CLS_INTLIST = 6;
+	private static final int CLS_INTARRAY = 7;
+	private static final int CLS_INTEGER = 8;
+	private static final int CLS_LONGARRAY = 10;
+	private static final int CLS_PAIRARRAY = 11;
+	private static final int CLS_KVSRETOBJARRAY = 12;
+
+	/* size of the class descriptor, excluding the field type strings */
+	private static final int[] descBase = new int[CLASSES.length];
+	/* size of the primitive fields of an instance */
+	private static final int[] primBytes = new int[CLASSES.length];
+	/* the type strings (e.g. "Ljava/lang/String;") of the object fields */
+	private static final int[][] descTypes = new int[CLASSES.length][];
+	/* the serializable super class, or -1 if it is written as TC_NULL */
+	private static final int[] superClass = new int[CLASSES.length];
+	private static final ArrayList<String> typeStrings = new ArrayList<String>();
+
+	static
+	{
+		for (int i = 0; i < CLASSES.length; i++)
+		{
+			ObjectStreamClass osc = ObjectStreamClass.lookup(CLASSES[i]);
+			/* TC_CLASSDESC, name, serialVersionUID, flags, number of fields */
+			int size = 1 + utfSize(CLASSES[i].getName()) + 8 + 1 + 2;
+			ObjectStreamField[] fields = osc.getFields();
+			ArrayList<Integer> types = new ArrayList<Integer>();
+			for (int j = 0; j < fields.length; j++)
+			{
+				size += 1 + utfSize(fields[j].getName());
+				if (fields[j].isPrimitive())
+				{
+					primBytes[i] += primSize(fields[j].getTypeCode());
+				}
+				else
+				{
+					String typeString = fields[j].getTypeString();
+					int pos = typeStrings.indexOf(typeString);
+					if (pos == -1)
+					{
+						typeStrings.add(typeString);
+						pos = typeStrings.size() - 1;
+					}
+					types.add(pos);
+				}
+			}
+			/* TC_ENDBLOCKDATA for the class annotation */
+			size += 1;
+			descBase[i] = size;
+			superClass[i] = Arrays.asList(CLASSES).indexOf(CLASSES[i].getSuperclass());
+			descTypes[i] = new int[types.size()];
+			for (int j = 0; j < types.size(); j++)
+			{
+				descTypes[i][j] = types.get(j);
+			}
+		}
+	}
+
+	private int mode;
+	private int validateSample;
+	/* the size of the job messages by message type and job index, 0 if not
+	 * known yet, a row is made for the types that carry a job */
+	private int[][] cache;
+
+	/* the class descriptors and type strings already written to the stream */
+	private int seenClasses;
+	private long seenTypes;
+
+	private long numMsg;
+	private long numSampled;
+	private long sumAbsErr;
+	private long maxAbsErr;
+	private double sumRelErr;
+
+	public MsgSizeEstimator(String mode, int validateSample)
+	{
+		this.mode = Arrays.asList(NAMES).indexOf(mode);
+		if (this.mode == -1)
+		{
+			throw new IllegalArgumentException("Unknown message size mode:" + mode);
+		}
+		this.validateSample = validateSample > 0 ? validateSample : 1;
+		this.cache = new int[MsgType.NUM][];
+	}
+	
+	public static String name(int mode)
+	{
+		return NAMES[mode];
+	}
+
+	public int sizeOf(Message msg)
+	{
+		numMsg++;
+		switch (mode)
+		{
+			case ANALYTIC:
+				return estimate(msg);
+			case VALIDATE:
+				int size = estimate(msg);
+				if (numMsg % validateSample == 0)
+				{
+					validate(msg, size);
+				}
+				return size;
+			case CACHED:
+				return cachedSize(msg);
+			default:
+				return Library.serialize(msg).length;
+		}
+	}
+
+	/* the size of a job message only depends on the message type and the
+	 * job, which is not modified between the launch and the job done message
+	 */
+	public int cachedSize(Message msg)
+	{
+		if (!(msg.content instanceof Job))
+		{
+			return Library.serialize(msg).length;
+		}
+		Job job = (Job)msg.content;
+		int[] sizes = cache[msg.msgType];
+		if (sizes == null || job.index >= sizes.length)
+		{
+			int length = sizes == null ? 1024 : sizes.length;
+			while (length <= job.index)
+			{
+				length *= 2;
+			}
+			sizes = sizes == null ? new int[length] : Arrays.copyOf(sizes, length);
+			cache[msg.msgType] = sizes;
+		}
+		if (sizes[job.index] == 0)
+		{
+			sizes[job.index] = Library.serialize(msg).length;
+		}
+		return sizes[job.index];
+	}
+
+	public int estimate(Message msg)
+	{
+		seenClasses = 0;
+		seenTypes = 0;
+		int size = STREAM_HEADER + 1 + descSize(CLS_MESSAGE) + primBytes[CLS_MESSAGE];
+		size += objectSize(msg.content);
+		if (size < 0)
+		{
+			return Library.serialize(msg).length;	// unknown content
+		}
+		return size;
+	}
+
+	public void validate(Message msg, int estimate)
+	{
+		int exact = Library.serialize(msg).length;
+		long absErr = Math.abs(exact - estimate);
+		numSampled++;
+		sumAbsErr += absErr;
+		sumRelErr += (double)absErr / (double)exact;
+		if (absErr > maxAbsErr)
+		{
+			maxAbsErr = absErr;
+		}
+	}
+
+	public void report(Writer bw) throws IOException
+	{
+		if (mode != VALIDATE || numSampled == 0)
+		{
+			return;
+		}
+		bw.write("The number of message sizes validated is:" + numSampled + "\r\n");
+		bw.write("The average absolute message size error is:" +
+				(double)sumAbsErr / (double)numSampled + "\r\n");
+		bw.write("The average relative message size error is:" +
+				sumRelErr / (double)numSampled + "\r\n");
+		bw.write("The maximum absolute message size error is:" + maxAbsErr + "\r\n");
+	}
+
+	/* returns a negative size if the object is of an unknown class */
+	private int objectSize(Object obj)
+	{
+		if (obj == null)
+		{
+			return NULL_REF;
+		}
+		else if (obj instanceof String)
+		{
+			return stringSize((String)obj);
+		}
+		else if (obj instanceof Pair)
+		{
+			return pairSize((Pair)obj);
+		}
+		else if (obj instanceof KVSReturnObj)
+		{
+			return kvsRetObjSize((KVSReturnObj)obj);
+		}
+		else if (obj instanceof Resource)
+		{
+			return resourceSize((Resource)obj);
+		}
+		else if (obj instanceof Job)
+		{
+			return jobSize((Job)obj);
+		}
+		else if (obj instanceof LinkedList)
+		{
+			return listSize((LinkedList<?>)obj);
+		}
+		else if (obj instanceof IntList)
+		{
+			return intListSize((IntList)obj);
+		}
+		else if (obj instanceof Pair[])
+		{
+			return arraySize(CLS_PAIRARRAY, (Object[])obj);
+		}
+		else if (obj instanceof KVSReturnObj[])
+		{
+			return arraySize(CLS_KVSRETOBJARRAY, (Object[])obj);
+		}
+		else if (obj instanceof Integer)
+		{
+			return 1 + descSize(CLS_INTEGER) + primBytes[CLS_INTEGER];
+		}
+		else
+		{
+			return Integer.MIN_VALUE / 2;
+		}
+	}
+
+	private int pairSize(Pair pair)
+	{
+		return 1 + descSize(CLS_PAIR) + primBytes[CLS_PAIR] +
+				objectSize(pair.key) + objectSize(pair.value) +
+				objectSize(pair.attemptValue);
+	}
+
+	private int kvsRetObjSize(KVSReturnObj kvsRetObj)
+	{
+		return 1 + descSize(CLS_KVSRETOBJ) + primBytes[CLS_KVSRETOBJ] +
+				objectSize(kvsRetObj.key) + objectSize(kvsRetObj.value);
+	}
+
+	private int resourceSize(Resource res)
+	{
+		/* the fields, then TC_ARRAY, descriptor, length and the words */
+		return 1 + descSize(CLS_RESOURCE) + primBytes[CLS_RESOURCE] +
+				1 + descSize(CLS_LONGARRAY) + 4 + 8 * res.words.length;
+	}
+
+	private int jobSize(Job job)
+	{
+		return 1 + descSize(CLS_JOB) + primBytes[CLS_JOB] +
+				stringSize(job.jobId) + stringSize(job.prefix) +
+				stringSize(job.dir) + stringSize(job.cmd) + stringSize(job.argv) +
+				intListSize(job.nodelist) + intListSize(job.ctrls) +
+				listSize(job.ctrlNodelist) + objectSize(job.resBackup);
+	}
+
+	/* TC_ARRAY, descriptor, length, elements */
+	private int arraySize(int cls, Object[] array)
+	{
+		int size = 1 + descSize(cls) + 4;
+		for (int i = 0; i < array.length; i++)
+		{
+			size += objectSize(array[i]);
+		}
+		return size;
+	}
+	
+	private int listSize(LinkedList<?> list)
+	{
+		if (list == null)
+		{
+			return NULL_REF;
+		}
+		/* TC_OBJECT, descriptor, block data holding the size, elements,
+		 * TC_ENDBLOCKDATA */
+		int size = 1 + descSize(CLS_LINKEDLIST) + 1 + 1 + 4;
+		for (Object obj : list)
+		{
+			size += objectSize(obj);
+		}
+		return size + 1;
+	}
+
+	private int intListSize(IntList list)
+	{
+		if (list == null)
+		{
+			return NULL_REF;
+		}
+		/* TC_OBJECT, descriptor, size, then TC_ARRAY, descriptor, length and 
+		 * the whole backing array */
+		return 1 + descSize(CLS_INTLIST) + primBytes[CLS_INTLIST] +
+				1 + descSize(CLS_INTARRAY) + 4 + 4 * list.data.length;
+	}
+
+	private int descSize(int cls)
+	{
+		int bit = 1 << cls;
+		if ((seenClasses & bit) != 0)
+		{
+			return REFERENCE;
+		}
+		seenClasses |= bit;
+		int size = descBase[cls];
+		size += superClass[cls] >= 0 ? descSize(superClass[cls]) : NULL_REF;
+		for (int i = 0; i < descTypes[cls].length; i++)
+		{
+			long typeBit = 1L << descTypes[cls][i];
+			if ((seenTypes & typeBit) != 0)
+			{
+				size += REFERENCE;
+			}
+			else
+			{
+				seenTypes |= typeBit;
+				size += 1 + utfSize(typeStrings.get(descTypes[cls][i]));
+			}
+		}
+		return size;
+	}
+
+	/* TC_STRING + length + bytes, assuming ASCII content */
+	private static int stringSize(String str)
+	{
+		if (str == null)
+		{
+			return NULL_REF;
+		}
+		return 1 + utfSize(str);
+	}
+
+	private static int utfSize(String str)
+	{
+		return 2 + str.length();
+	}
+
+	private static int primSize(char typeCode)
+	{
+		switch (typeCode)
+		{
+			case 'B': case 'Z':
+				return 1;
+			case 'C': case 'S':
+				return 2;
+			case 'I': case 'F':
+				return 4;
+			default:
+				return 8;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/* The kinds of messages exchanged between peers, coded as ints so that
+ * events can be dispatched with a switch instead of string comparisons.
+ */
+public class MsgType 
+{
+	public static final int REGISTRATION = 0;
+	public static final int KVS = 1;
+	public static final int KVS_RETURN = 2;
+	public static final int RETRY = 3;
+	public static final int REALLOCATION = 4;
+	public static final int TRANSMIT_JOB = 5;
+	public static final int TRANSMIT_JOB_ACK = 6;
+	public static final int EXECUTE_JOB = 7;
+	public static final int ONE_JOB_FINISH = 8;
+	public static final int JOB_DONE = 9;
+	/* not a message, the content is a Runnable that is run when the event
+	 * comes up, e.g. TrafficGene scheduling its next chunk of registrations */
+	public static final int RUN = 10;
+	public static final int NUM = 11;
+	
+	private static final String[] NAMES = {"registration", "kvs", "kvs return", 
+		"retry", "reallocation", "transmit job", "transmit job ack", 
+		"execute job", "one job finish", "job done", "run"};
+	
+	public static String name(int type)
+	{
+		if (type < 0 || type >= NAMES.length)
+		{
+			return Integer.toString(type);
+		}
+		return NAMES[type];
+	}
+}
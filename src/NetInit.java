@@ -14,6 +14,13 @@ public class NetInit implements Control
 	private static final String PAR_JOBPROCTIME = "jobProcTime";
 	private static final String PAR_KVSPROCTIME = "kvsProcTime";
 	private static final String PAR_WORKLOADFILE = "workloadFile";
+	private static final String PAR_WORKLOADFORMAT = "workloadFormat";
+	private static final String PAR_MSGSIZEMODE = "msgSizeMode";
+	private static final String PAR_VALIDATESAMPLE = "validateSample";
+	private static final String PAR_VIRTUALNODES = "virtualNodes";
+	private static final String PAR_LAUNCHFANOUT = "launchFanOut";
+	private static final String PAR_TREEACK = "treeAck";
+	private static final String PAR_TREEFINISH = "treeFinish";
 	
 	private int pid;
 	private int partSize;
@@ -24,6 +31,13 @@ public class NetInit implements Control
 	private long jobProcTime;
 	private long kvsProcTime;
 	private String workloadFile;
+	private String workloadFormat;
+	private String msgSizeMode;
+	private int validateSample;
+	private int virtualNodes;
+	private int launchFanOut;
+	private boolean treeAck;
+	private boolean treeFinish;
 	
 	public NetInit(String prefix)
 	{
@@ -36,102 +50,157 @@ public class NetInit implements Control
 		jobProcTime = Configuration.getLong(prefix + "." + PAR_JOBPROCTIME);
 		kvsProcTime = Configuration.getLong(prefix + "." + PAR_KVSPROCTIME);
 		workloadFile = Configuration.getString(prefix + "." + PAR_WORKLOADFILE);
+		workloadFormat = Configuration.getString(prefix + "." + PAR_WORKLOADFORMAT, "text");
+		msgSizeMode = Configuration.getString(prefix + "." + PAR_MSGSIZEMODE, 
+				MsgSizeEstimator.name(MsgSizeEstimator.SERIALIZE));
+		validateSample = Configuration.getInt(prefix + "." + PAR_VALIDATESAMPLE, 100);
+		virtualNodes = Configuration.getInt(prefix + "." + PAR_VIRTUALNODES, 0);
+		launchFanOut = Configuration.getInt(prefix + "." + PAR_LAUNCHFANOUT, 2);
+		treeAck = Configuration.getBoolean(prefix + "." + PAR_TREEACK, false);
+		treeFinish = Configuration.getBoolean(prefix + "." + PAR_TREEFINISH, false);
 	}
 	
-	public void initLibrary()
+	/* the network and the names of its nodes, what a peer needs to send */
+	public SimContext initNetwork(int numNode)
 	{
-		Library.netSpeed = netSpeed;
-		Library.latency = latency;
-		Library.sendOverhead = sendOverhead;
-		Library.recvOverhead = recvOverhead;
-		Library.jobProcTime = jobProcTime;
-		Library.kvsProcTime = kvsProcTime;
+		SimContext ctx = new SimContext();
 		
-		Library.preNoJobFinished = 0;
-		Library.numJobFinished = 0;
-		Library.numAllMsg = 0;
-		Library.numInsertMsg = 0;
-		Library.numLookupMsg = 0;
-		Library.numCswapMsg = 0;
-		Library.numCallbackMsg = 0;
+		ctx.netSpeed = netSpeed;
+		ctx.latency = latency;
+		ctx.sendOverhead = sendOverhead;
+		ctx.recvOverhead = recvOverhead;
+		ctx.jobProcTime = jobProcTime;
+		ctx.kvsProcTime = kvsProcTime;
 		
-		Library.jobMetaData = new HashMap<String, Job>();
+		ctx.msgSizeEstimator = new MsgSizeEstimator(msgSizeMode, validateSample);
+		ctx.launchTree = new LaunchTree(launchFanOut, treeAck, treeFinish, sendOverhead, 
+				recvOverhead, latency);
+		
+		int numPart = numNode / partSize;
+		ctx.nodeNames = new String[numNode];
+		for (int i = 0; i < numNode; i++)
+		{
+			ctx.nodeNames[i] = "node-" + Integer.toString(i);
+		}
+		ctx.memList = new int[numPart];
+		for (int i = 0; i < numPart; i++)
+		{
+			ctx.memList[i] = i * partSize;
+		}
+		if (virtualNodes > 0)
+		{
+			ctx.ring = new HashRing(ctx.memList, ctx.nodeNames, virtualNodes);
+		}
+		return ctx;
+	}
+	
+	public SimContext initContext()
+	{
+		int numNode = Network.size();
+		int numPart = numNode / partSize;
+		SimContext ctx = initNetwork(numNode);
 		
-		Library.workload = new ArrayList<String>();
 		try
 		{
-			BufferedReader br = new BufferedReader(new FileReader(workloadFile));
-			String str = br.readLine();
-			while (str != null)
+			if (workloadFormat.equals("binary"))
+			{
+				ctx.workload = new BinaryWorkloadSource(workloadFile);
+			}
+			else
 			{
-				Library.workload.add(str);
-				str = br.readLine();
+				ctx.workload = new TextWorkloadSource(workloadFile);
 			}
 		}
 		catch (IOException e)
 		{
-			e.printStackTrace();
+			throw new RuntimeException("Cannot read the workload file:" + workloadFile, e);
 		}
-		Library.numAllJobs = Library.workload.size();
+		ctx.numAllJobs = ctx.workload.numJobs();
 		
-		int numNode = Network.size();
-		int numPart = numNode / partSize;
-		Library.numJobsPerCtrl =  Library.numAllJobs / numPart; 
+		ctx.numJobsPerCtrl =  ctx.numAllJobs / numPart; 
+		ctx.jobTable = new JobTable(numPart * ctx.numJobsPerCtrl);
 		
 		try
 		{
-			String suffix = numPart + "_" + partSize + "_" + Library.numJobsPerCtrl;
-			Library.bwThroughput = new BufferedWriter(new FileWriter("output/throughput_" + suffix));
-			Library.bwTaskDetail = new BufferedWriter(new FileWriter("output/job_" + suffix));
+			ctx.outputSuffix = numPart + "_" + partSize + "_" + ctx.numJobsPerCtrl;
+			ctx.bwThroughput = new BufferedWriter(new FileWriter("output/throughput_" + 
+					ctx.outputSuffix));
+			ctx.bwTaskDetail = new BufferedWriter(new FileWriter("output/job_" + ctx.outputSuffix));
+			ctx.outputTaskDetailHeader();
+			/* keep the records of the finished jobs if the run ends early */
+			final BufferedWriter bwTaskDetail = ctx.bwTaskDetail;
+			ctx.taskDetailHook = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						bwTaskDetail.flush();
+					}
+					catch (IOException e)
+					{
+						// nothing more can be kept
+					}
+				}
+			};
+			Runtime.getRuntime().addShutdownHook(ctx.taskDetailHook);
 		}
 		catch (IOException e)
 		{
 			e.printStackTrace();
 		}
-		
-		Library.memList = new String[numPart];
-		for (int i = 0; i < numPart; i++)
-		{
-			Library.memList[i] = "node-" + Integer.toString(i * partSize);
-		}
+		return ctx;
 	}
 	
-	public void initPeer()
+	public void initPeer(SimContext ctx)
 	{
 		int numNode = Network.size();
-		int numPart = numNode / partSize;
 		
 		for (int i = 0; i < numNode; i++)
 		{
 			Node node = (Node)Network.get(i);
-			PeerProtocol pp = (PeerProtocol)node.getProtocol(pid);
-			pp.id = i;
-			pp.ctrlId = i / partSize * partSize;
-			if (i % partSize == 0)
-			{
-				pp.ctrlMaxProcTime = 0;
-				pp.ctrlMaxFwdTime = 0;
-				pp.kvsMaxProcTime = 0;
-				pp.kvsMaxFwdTime = 0;
-				pp.msgCount = 0;
-				pp.hmData = new HashMap<Object, Object>();
-				pp.numCDRegist = 0;
-				pp.res = new Resource();
-				pp.jobStartIndex = i / partSize * Library.numJobsPerCtrl;
-				pp.numJobsStart = 0;
-				pp.numJobsFin = 0;
-				pp.throughput = 0;
-				pp.callbackHM = new HashMap<String, Integer>();
-			}
-			pp.cdMaxProcTime = 0;
-			pp.cdMaxFwdTime = 0;
+			initPeer(ctx, (PeerProtocol)node.getProtocol(pid), i);
+		}
+	}
+	
+	public void initPeer(SimContext ctx, PeerProtocol pp, int i)
+	{
+		pp.ctx = ctx;
+		pp.id = i;
+		pp.ctrlId = i / partSize * partSize;
+		if (i % partSize == 0)
+		{
+			pp.ctrlMaxProcTime = 0;
+			pp.ctrlMaxFwdTime = 0;
+			pp.kvsMaxProcTime = 0;
+			pp.kvsMaxFwdTime = 0;
+			pp.msgCount = 0;
+			pp.hmData = new HashMap<Object, Object>();
+			pp.hmVersion = new HashMap<Object, Long>();
+			pp.numKVSOps = 0;
+			pp.numKeysPlaced = 0;
+			pp.numCDRegist = 0;
+			pp.res = new Resource();
+			pp.jobStartIndex = i / partSize * ctx.numJobsPerCtrl;
+			pp.numJobsStart = 0;
+			pp.numJobsAllocating = 0;
+			pp.numNodesAllocating = 0;
+			pp.numJobsFin = 0;
+			pp.throughput = 0;
+			pp.callbackHM = new HashMap<String, Integer>();
+			pp.hmWatch = new HashMap<Object, ArrayList<Message>>();
+			pp.ctrlSelector = new CtrlSelector(ctx.memList, partSize, pp.ctrlSelect);
+			pp.resCache = new HashMap<Integer, KVSReturnObj>();
 		}
+		pp.pendingAcks = new HashMap<Integer, int[]>();
+		pp.pendingFinish = new HashMap<Integer, Integer>();
+		pp.cdMaxProcTime = 0;
+		pp.cdMaxFwdTime = 0;
 	}
 	
 	public boolean execute()
 	{
-		initLibrary();
-		initPeer();
+		initPeer(initContext());
 		return false;
 	}
 }
\ No newline at end of file
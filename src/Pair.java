@@ -5,12 +5,15 @@ public class Pair implements Serializable
 	Object key;
 	Object value;
 	Object attemptValue;
-	String identifier;
-	String type;
-	String forWhat;
+	int identifier;	// the index of the job
+	int type;
+	int forWhat;
+	long version;	// the expected version of a versioned compare and swap
+	/* when the client sent the operation, for its latency */
+	transient long sendTime;
 	
 	public Pair(Object key, Object value, Object attemptValue, 
-			String identifier, String type, String forWhat)
+			int identifier, int type, int forWhat)
 	{
 		this.key = key;
 		this.value = value;
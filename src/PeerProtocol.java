@@ -21,13 +21,28 @@ public class PeerProtocol implements EDProtocol
 	private static final String PARA_CALLBACKINTERVAL = "callbackInterval";
 	private static final String PARA_CALLBACKNUMTRY = "callbackNumTry";
 	private static final String PARA_MAXNUMTRY = "maxNumTry";
+	private static final String PARA_VERSIONEDCSWAP = "versionedCswap";
+	private static final String PARA_BATCHKVS = "batchKVS";
+	private static final String PARA_FANOUTKVS = "fanOutKVS";
+	private static final String PARA_WATCHKVS = "watchKVS";
+	private static final String PARA_CTRLSELECT = "ctrlSelect";
+	private static final String PARA_CACHERES = "cacheRes";
+	private static final String PARA_SUBMITWINDOW = "submitWindow";
 	 
+	public SimContext ctx;
 	public Parameters par;
 	public int partSize;
 	public long sleepLength;
 	public long callbackInterval;
 	public int callbackNumTry;
 	public int maxNumTry;
+	public boolean versionedCswap;
+	public boolean batchKVS;
+	public boolean fanOutKVS;
+	public boolean watchKVS;
+	public String ctrlSelect;
+	public boolean cacheRes;
+	public int submitWindow;
 	
 	public String prefix;
 	public int id;
@@ -40,14 +55,29 @@ public class PeerProtocol implements EDProtocol
 	public long cdMaxFwdTime;
 	public long msgCount;
 	public HashMap<Object, Object> hmData;
+	public HashMap<Object, Long> hmVersion;
+	public long numKVSOps;	// the zht operations served, a batch counts each
+	public long numKeysPlaced;	// the keys inserted here that it did not hold
 	public int numCDRegist;
 	public Resource res;
 	public int jobStartIndex;
 	public int numJobsStart;
+	public int numJobsAllocating;	// the jobs that do not have all their nodes yet
+	public int numNodesAllocating;	// the nodes those jobs ask for
 	public int numJobsFin;
 	public double throughput;
 	
 	public HashMap<String, Integer> callbackHM;
+	/* the callbacks waiting for a key to be "done", with watchKVS */
+	public HashMap<Object, ArrayList<Message>> hmWatch;
+	public CtrlSelector ctrlSelector;
+	/* the parent and the number of children yet to ack, by job, with treeAck */
+	public HashMap<Integer, int[]> pendingAcks;
+	/* this node and the subtrees of its children yet to finish, by job, 
+	 * with treeFinish */
+	public HashMap<Integer, Integer> pendingFinish;
+	/* the last reply seen for each resource key, with cacheRes */
+	public HashMap<Integer, KVSReturnObj> resCache;
 	/* initialization
 	 * read the parameters from the configuration file
 	 */
@@ -61,6 +91,14 @@ public class PeerProtocol implements EDProtocol
 		this.callbackInterval = Configuration.getLong(prefix + "." + PARA_CALLBACKINTERVAL);
 		this.callbackNumTry = Configuration.getInt(prefix + "." + PARA_CALLBACKNUMTRY);
 		this.maxNumTry = Configuration.getInt(prefix + "." + PARA_MAXNUMTRY);
+		this.versionedCswap = Configuration.getBoolean(prefix + "." + PARA_VERSIONEDCSWAP, false);
+		this.batchKVS = Configuration.getBoolean(prefix + "." + PARA_BATCHKVS, false);
+		this.fanOutKVS = Configuration.getBoolean(prefix + "." + PARA_FANOUTKVS, false);
+		this.watchKVS = Configuration.getBoolean(prefix + "." + PARA_WATCHKVS, false);
+		this.ctrlSelect = Configuration.getString(prefix + "." + PARA_CTRLSELECT, 
+				CtrlSelector.name(CtrlSelector.RANDOM));
+		this.cacheRes = Configuration.getBoolean(prefix + "." + PARA_CACHERES, false);
+		this.submitWindow = Configuration.getInt(prefix + "." + PARA_SUBMITWINDOW, 1);
 	}
 	
 	public long updateTime(long increment, long base)
@@ -88,43 +126,111 @@ public class PeerProtocol implements EDProtocol
 		return endTime - CommonState.getTime();
 	}
 	
-	/* hash to the correct server */
+	/* hash to the correct server, a controller id is hashed as its node name 
+	 * so that the placement of the resource keys does not change, and with 
+	 * virtualNodes the server is found on the consistent hash ring
+	 */
 	public int hashServer(Object key)
 	{
-		int hashCode = Math.abs(key.hashCode());
-		String server = Library.memList[hashCode % Library.memList.length];
-		return Integer.parseInt(server.substring(5));
+		int hashCode;
+		if (key instanceof Integer)
+		{
+			hashCode = ctx.nodeName((Integer)key).hashCode();
+		}
+		else
+		{
+			hashCode = key.hashCode();
+		}
+		if (ctx.ring != null)
+		{
+			return ctx.ring.server(hashCode);
+		}
+		hashCode = Math.abs(hashCode);
+		return ctx.memList[hashCode % ctx.memList.length];
 	}
 	
 	public void sendMsg(Message msg, long time)
 	{
-		byte[] msgByte = Library.serialize(msg);
-		long endTime = time + Library.getCommOverhead(msgByte.length);
-		EDSimulator.add(waitTimeCal(endTime), msg, Network.get(msg.destId), par.pid);
+		int msgSize = ctx.msgSizeEstimator.sizeOf(msg);
+		long endTime = time + ctx.getCommOverhead(msgSize);
+		schedule(waitTimeCal(endTime), msg, msg.destId);
+	}
+	
+	/* all the events of the protocol go through here */
+	public void schedule(long delay, Object event, int destId)
+	{
+		EDSimulator.add(delay, event, Network.get(destId), par.pid);
 	}
 	
 	public void regist(long wait)
 	{
-		String nodeName = "node-" + Integer.toString(id);
-		Message msg = new Message(id, ctrlId, "registration", nodeName);
-		sendMsg(msg, wait + Library.sendOverhead);
+		Message msg = new Message(id, ctrlId, MsgType.REGISTRATION, null);
+		sendMsg(msg, wait + ctx.sendOverhead);
 	}
 
 	public void kvsClientInteract(Pair pair)
 	{
-		ctrlMaxFwdTime = updateTime(Library.sendOverhead, ctrlMaxFwdTime);
-		int destId = hashServer(pair.key);
-		Message msg = new Message(id, destId, "kvs", pair);
+		kvsClientInteract(pair, hashServer(pair.key));
+	}
+	
+	public void kvsClientInteract(Pair pair, int destId)
+	{
+		ctrlMaxFwdTime = updateTime(ctx.sendOverhead, ctrlMaxFwdTime);
+		pair.sendTime = ctrlMaxFwdTime;
+		Message msg = new Message(id, destId, MsgType.KVS, pair);
 		sendMsg(msg, ctrlMaxFwdTime);
 	}
 	
+	/* sends the operations of a job grouped by server, one batch each */
+	public void kvsBatch(Job job, ArrayList<Pair> pairs, int forWhat)
+	{
+		TreeMap<Integer, ArrayList<Pair>> batches = new TreeMap<Integer, ArrayList<Pair>>();
+		for (Pair pair : pairs)
+		{
+			int destId = hashServer(pair.key);
+			ArrayList<Pair> batch = batches.get(destId);
+			if (batch == null)
+			{
+				batch = new ArrayList<Pair>();
+				batches.put(destId, batch);
+			}
+			batch.add(pair);
+		}
+		for (Map.Entry<Integer, ArrayList<Pair>> entry : batches.entrySet())
+		{
+			ArrayList<Pair> batch = entry.getValue();
+			kvsBatch(job, batch.toArray(new Pair[batch.size()]), forWhat, entry.getKey());
+		}
+	}
+	
+	/* sends the operations of a job at once, in batches or one by one */
+	public void kvsAll(Job job, ArrayList<Pair> pairs, int forWhat)
+	{
+		if (batchKVS)
+		{
+			kvsBatch(job, pairs, forWhat);
+			return;
+		}
+		for (Pair pair : pairs)
+		{
+			pair.forWhat = forWhat;
+			kvsClientInteract(pair);
+		}
+	}
+	
+	public void kvsBatch(Job job, Pair[] pairs, int forWhat, int destId)
+	{
+		Pair pair = new Pair(null, pairs, null, job.index, KVSOp.BATCH, forWhat);
+		kvsClientInteract(pair, destId);
+	}
+	
 	public void printOutResult()
 	{
-		if (numJobsFin == Library.numJobsPerCtrl)
+		if (numJobsFin == ctx.numJobsPerCtrl)
 		{
 			try
 			{
-				Library.bwThroughput.write("The throughput of controller " + id + " is:" + 
+				ctx.bwThroughput.write("The throughput of controller " + id + " is:" + 
 					(double)numJobsFin / (double)ctrlMaxFwdTime * 1E6 + "\r\n");
 			}
 			catch (IOException e)
@@ -132,49 +238,98 @@ public class PeerProtocol implements EDProtocol
 				e.printStackTrace();
 			}
 		}
-		if (Library.numJobFinished == Library.numAllJobs)
+		if (ctx.numJobFinished == ctx.numAllJobs)
 		{
 			try
 			{
-				Library.bwThroughput.write("The overall throughput is:" + (double)
-						Library.numAllJobs / (double)ctrlMaxFwdTime * 1E6 + "\r\n");
-				Library.bwThroughput.write("The number of insert message is:" + 
-						Library.numInsertMsg + "\r\n");
-				Library.bwThroughput.write("The number of lookup message is:" + 
-						Library.numLookupMsg + "\r\n");
-				Library.bwThroughput.write("The number of compare and swap message is:" + 
-						Library.numCswapMsg + "\r\n");
-				Library.bwThroughput.write("The number of callback message is:" + 
-						Library.numCallbackMsg + "\r\n");
-				Library.bwThroughput.write("The number of all ZHT message is:" + 
-						(Library.numInsertMsg + Library.numLookupMsg + 
-						 Library.numCswapMsg + Library.numCallbackMsg) + "\r\n");
-				Library.bwThroughput.flush();
-				Library.bwThroughput.close();
+				ctx.throughput = (double)ctx.numAllJobs / (double)ctrlMaxFwdTime * 1E6;
+				ctx.bwThroughput.write("The overall throughput is:" + ctx.throughput + "\r\n");
+				ctx.bwThroughput.write("The number of insert message is:" + 
+						ctx.numInsertMsg + "\r\n");
+				ctx.bwThroughput.write("The number of lookup message is:" + 
+						ctx.numLookupMsg + "\r\n");
+				ctx.bwThroughput.write("The number of compare and swap message is:" + 
+						ctx.numCswapMsg + "\r\n");
+				ctx.bwThroughput.write("The number of callback message is:" + 
+						ctx.numCallbackMsg + "\r\n");
+				ctx.bwThroughput.write("The number of all ZHT message is:" + 
+						(ctx.numInsertMsg + ctx.numLookupMsg + 
+						 ctx.numCswapMsg + ctx.numCallbackMsg) + "\r\n");
+				ctx.bwThroughput.write("The submission window is:" + 
+						submitWindow + "\r\n");
+				ctx.bwThroughput.write("The controller selection is:" + 
+						ctrlSelector.strategy() + "\r\n");
+				ctx.bwThroughput.write("The number of allocation round trips per job is:" + 
+						(double)(ctx.numAllocLookup + ctx.numAllocCswap) / 
+						(double)ctx.numAllJobs + "\r\n");
+				ctx.bwThroughput.write("The number of controllers found empty is:" + 
+						ctx.numAllocEmpty + "\r\n");
+				if (cacheRes)
+				{
+					ctx.bwThroughput.write("The number of resource lookups saved by the " + 
+							"cache is:" + ctx.numResCacheHit + "\r\n");
+				}
+				ctx.msgSizeEstimator.report(ctx.bwThroughput);
+				ctx.bwThroughput.flush();
+				ctx.bwThroughput.close();
 			}
 			catch (IOException e)
 			{
 				e.printStackTrace();
 			}
-			Library.outputTaskDetail(Network.size() / partSize, partSize, Library.numJobsPerCtrl);
+			ctx.closeTaskDetail();
+			ctx.outputLatency();
+			ctx.outputLaunchLatency();
+			outputServerLoad();
+		}
+	}
+	
+	public void outputServerLoad()
+	{
+		long[] numKeys = new long[ctx.memList.length];
+		int[] numHeld = new int[ctx.memList.length];
+		long[] numOps = new long[ctx.memList.length];
+		for (int i = 0; i < ctx.memList.length; i++)
+		{
+			PeerProtocol pp = (PeerProtocol)Network.get(ctx.memList[i]).getProtocol(par.pid);
+			numKeys[i] = pp.numKeysPlaced;
+			numHeld[i] = pp.hmData.size();
+			numOps[i] = pp.numKVSOps;
 		}
+		ctx.outputServerLoad(numKeys, numHeld, numOps);
 	}
 	
 	public void procRegistEvent(Message registMsg)
 	{
 		numCDRegist++;
-		ctrlMaxFwdTime = updateTime(Library.recvOverhead, ctrlMaxFwdTime);
-		res.numAvailNode++;
-		res.nodeLL.add((String)registMsg.content);
+		ctrlMaxFwdTime = updateTime(ctx.recvOverhead, ctrlMaxFwdTime);
+		res.add(registMsg.sourceId);
 		if (numCDRegist == partSize)
 		{
 			
-			String key = "node-" + Integer.toString(id);
-			Pair resPair = new Pair(key, res, null, null, "insert", "insert resource");
+			Pair resPair = new Pair(id, res, null, -1, 
+									KVSOp.INSERT, KVSPurpose.INSERT_RESOURCE);
 			kvsClientInteract(resPair);
 		}
 	}
 	
+	/* the version of a key, which is bumped by every insert and 
+	 * successful compare and swap, 0 means the key is not there 
+	 */
+	public long getVersion(Object key)
+	{
+		Long version = hmVersion.get(key);
+		return version == null ? 0 : version;
+	}
+	
+	public long putVersioned(Object key, Object value)
+	{
+		hmData.put(key, value);
+		long version = getVersion(key) + 1;
+		hmVersion.put(key, version);
+		return version;
+	}
+	
 	public KVSReturnObj procKVSEventAct(Pair pair)
 	{
 		KVSReturnObj kvsRetObj = new KVSReturnObj();
@@ -182,56 +337,91 @@ public class PeerProtocol implements EDProtocol
 		kvsRetObj.identifier = pair.identifier;
 		kvsRetObj.type = pair.type;
 		kvsRetObj.forWhat = pair.forWhat;
-		if (pair.type.equals("insert"))
+		kvsRetObj.sendTime = pair.sendTime;
+		if (pair.type != KVSOp.BATCH)
 		{
-			Library.numInsertMsg++;
-			hmData.put(pair.key, pair.value);
-			kvsRetObj.value = pair.value;
-			kvsRetObj.result = true;
+			numKVSOps++;
 		}
-		else if (pair.type.equals("lookup"))
+		switch (pair.type)
 		{
-			Library.numLookupMsg++;
-			kvsRetObj.value = hmData.get(pair.key);
-			kvsRetObj.result = true;
-		}
-		else if (pair.type.equals("compare and swap"))
-		{
-			Library.numCswapMsg++;
-			Resource cur = (Resource)hmData.get(pair.key);
-			if (cur.comResource((Resource)pair.value) == 0)
-			{
-				hmData.put(pair.key, pair.attemptValue);
+			case KVSOp.INSERT:
+				ctx.numInsertMsg++;
+				if (getVersion(pair.key) == 0)
+				{
+					numKeysPlaced++;
+				}
+				kvsRetObj.version = putVersioned(pair.key, pair.value);
+				kvsRetObj.value = pair.value;
 				kvsRetObj.result = true;
-			}
-			else
-			{
-				kvsRetObj.result = false;
-			}
-			kvsRetObj.value = cur;
-		}
-		else if (pair.type.equals("callback"))
-		{
-			Library.numCallbackMsg++;
-			if (!callbackHM.containsKey(pair.key))
-			{
-				callbackHM.put((String)pair.key, 1);
-			}
-			else
-			{
-				int numTime = callbackHM.get((String)pair.key);
-				callbackHM.put((String)pair.key, numTime + 1);
-			}
-			String value = (String)hmData.get(pair.key);
-			if (value != null && value.equals("done"))
-			{
-				kvsRetObj.value = value;
+				if (watchKVS)
+				{
+					notifyWatch(pair.key);
+				}
+				break;
+			case KVSOp.LOOKUP:
+				ctx.numLookupMsg++;
+				kvsRetObj.value = hmData.get(pair.key);
+				kvsRetObj.version = getVersion(pair.key);
 				kvsRetObj.result = true;
-			}
-			else
-			{
-				kvsRetObj.result = false;
-			}
+				break;
+			case KVSOp.CSWAP:
+				ctx.numCswapMsg++;
+				Resource cur = (Resource)hmData.get(pair.key);
+				boolean match;
+				if (versionedCswap)
+				{
+					match = pair.version == getVersion(pair.key);
+				}
+				else
+				{
+					match = cur.comResource((Resource)pair.value) == 0;
+				}
+				if (match)
+				{
+					kvsRetObj.version = putVersioned(pair.key, pair.attemptValue);
+					kvsRetObj.result = true;
+				}
+				else
+				{
+					kvsRetObj.version = getVersion(pair.key);
+					kvsRetObj.result = false;
+				}
+				/* with cacheRes the client keeps the value, so it gets the 
+				 * new one */
+				kvsRetObj.value = cacheRes && match ? pair.attemptValue : cur;
+				break;
+			case KVSOp.BATCH:
+				Pair[] pairs = (Pair[])pair.value;
+				KVSReturnObj[] rets = new KVSReturnObj[pairs.length];
+				for (int i = 0; i < pairs.length; i++)
+				{
+					rets[i] = procKVSEventAct(pairs[i]);
+				}
+				kvsRetObj.value = rets;
+				kvsRetObj.result = true;
+				break;
+			case KVSOp.CALLBACK:
+				ctx.numCallbackMsg++;
+				if (!callbackHM.containsKey(pair.key))
+				{
+					callbackHM.put((String)pair.key, 1);
+				}
+				else
+				{
+					int numTime = callbackHM.get((String)pair.key);
+					callbackHM.put((String)pair.key, numTime + 1);
+				}
+				String value = (String)hmData.get(pair.key);
+				if (value != null && value.equals("done"))
+				{
+					kvsRetObj.value = value;
+					kvsRetObj.result = true;
+				}
+				else
+				{
+					kvsRetObj.result = false;
+				}
+				break;
 		}
 		return kvsRetObj;
 	}
@@ -239,15 +429,31 @@ public class PeerProtocol implements EDProtocol
 	public void procKVSEvent(Message msg)
 	{
 		Pair kvsPair = (Pair)msg.content;
-		if (!kvsPair.forWhat.equals("recheck callback"))
+		if (kvsPair.forWhat != KVSPurpose.RECHECK_CALLBACK)
 		{
-			kvsMaxFwdTime = updateTime(Library.recvOverhead, kvsMaxFwdTime);
+			kvsMaxFwdTime = updateTime(ctx.recvOverhead, kvsMaxFwdTime);
 			kvsMaxProcTime = timeCompOverride(kvsMaxProcTime, kvsMaxFwdTime);
-			kvsMaxProcTime = updateTime(Library.kvsProcTime, kvsMaxProcTime);
+			long procTime = ctx.kvsProcTime;
+			if (kvsPair.type == KVSOp.BATCH)	// every operation takes its time
+			{
+				procTime *= ((Pair[])kvsPair.value).length;
+			}
+			kvsMaxProcTime = updateTime(procTime, kvsMaxProcTime);
 		}
 		KVSReturnObj kvsRetObj = procKVSEventAct(kvsPair);
 		boolean needSend = true;
-		if (kvsRetObj.type == "callback" && !kvsRetObj.result)
+		if (kvsRetObj.type == KVSOp.CALLBACK && !kvsRetObj.result && watchKVS)
+		{
+			ArrayList<Message> watchers = hmWatch.get(kvsPair.key);
+			if (watchers == null)
+			{
+				watchers = new ArrayList<Message>(1);
+				hmWatch.put(kvsPair.key, watchers);
+			}
+			watchers.add(msg);
+			needSend = false;
+		}
+		else if (kvsRetObj.type == KVSOp.CALLBACK && !kvsRetObj.result)
 		{
 			if (callbackHM.get((String)kvsRetObj.key) > callbackNumTry)
 			{
@@ -257,96 +463,179 @@ public class PeerProtocol implements EDProtocol
 			else
 			{
 				Pair cbReCheckPair = new Pair(kvsPair.key, kvsPair.value, 
-					kvsPair.attemptValue, kvsPair.identifier, kvsPair.type, "recheck callback");
-				Message recheckMsg = new Message(msg.sourceId, id, "kvs", cbReCheckPair);
-				EDSimulator.add(callbackInterval, recheckMsg, Network.get(id), par.pid);
+					kvsPair.attemptValue, kvsPair.identifier, kvsPair.type, 
+					KVSPurpose.RECHECK_CALLBACK);
+				cbReCheckPair.sendTime = kvsPair.sendTime;
+				Message recheckMsg = new Message(msg.sourceId, id, MsgType.KVS, cbReCheckPair);
+				schedule(callbackInterval, recheckMsg, id);
 				needSend = false;
 			}
 		}
 		if (needSend)
 		{
 			kvsMaxFwdTime = timeCompOverride(kvsMaxFwdTime, kvsMaxProcTime);
-			kvsMaxFwdTime = updateTime(Library.sendOverhead, kvsMaxFwdTime);
-			Message retMsg = new Message(id, msg.sourceId, "kvs return", kvsRetObj);
+			kvsMaxFwdTime = updateTime(ctx.sendOverhead, kvsMaxFwdTime);
+			Message retMsg = new Message(id, msg.sourceId, MsgType.KVS_RETURN, kvsRetObj);
 			sendMsg(retMsg, kvsMaxFwdTime);
 		}
 	}
 	
-	public String[] parseJob(String jobDesc)
+	/* answers the callbacks on the key once it is "done", instead of having 
+	 * them rechecked every callbackInterval */
+	public void notifyWatch(Object key)
 	{
-		String[] jobArray = jobDesc.split(" ");
-		return jobArray;
+		if (!hmWatch.containsKey(key) || !"done".equals(hmData.get(key)))
+		{
+			return;
+		}
+		ArrayList<Message> watchers = hmWatch.remove(key);
+		for (Message watchMsg : watchers)
+		{
+			Pair pair = (Pair)watchMsg.content;
+			KVSReturnObj kvsRetObj = new KVSReturnObj();
+			kvsRetObj.key = pair.key;
+			kvsRetObj.value = "done";
+			kvsRetObj.identifier = pair.identifier;
+			kvsRetObj.type = pair.type;
+			kvsRetObj.forWhat = pair.forWhat;
+			kvsRetObj.sendTime = pair.sendTime;
+			kvsRetObj.result = true;
+			kvsMaxFwdTime = timeCompOverride(kvsMaxFwdTime, kvsMaxProcTime);
+			kvsMaxFwdTime = updateTime(ctx.sendOverhead, kvsMaxFwdTime);
+			Message retMsg = new Message(id, watchMsg.sourceId, MsgType.KVS_RETURN, kvsRetObj);
+			sendMsg(retMsg, kvsMaxFwdTime);
+		}
 	}
 	
-	public Job createJob(String[] jobArray)
+	public Job createJob(JobDesc jobDesc)
 	{
 		Job job = new Job();
-		job.client = "node-" + Integer.toString(id);
-		job.jobId = job.client + " " + Integer.toString(numJobsStart++);
-		job.prefix = jobArray[0];
-		job.numNodeRequired = Integer.parseInt(jobArray[1].substring(2));
-		job.numCoresRequiredPerNode = -1;
+		job.client = id;
+		job.index = jobStartIndex + numJobsStart;
+		job.jobId = ctx.nodeName(id) + " " + Integer.toString(numJobsStart++);
+		job.prefix = jobDesc.prefix;
+		job.numNodeRequired = jobDesc.numNodeRequired;
+		job.numCoresRequiredPerNode = jobDesc.numCoresRequiredPerNode;
 		job.numNodeTransmitted = 0;
 		job.numNodeReturnRes = 0;
-		job.dir = jobArray[2];
-		job.cmd = jobArray[3];
-		job.argv = "";
-		for (int i = 4; i < jobArray.length; i++)
-		{
-			job.argv += jobArray[i];
-			if (i != jobArray.length - 1)
-			{
-				job.argv += " ";
-			}
-		}
-		job.nodelist = new LinkedList<String>();
-		job.ctrls = new LinkedList<String>();
+		job.dir = jobDesc.dir;
+		job.cmd = jobDesc.cmd;
+		job.argv = jobDesc.argv;
+		job.duration = jobDesc.duration;
+		job.nodelist = new IntList(job.numNodeRequired);
+		job.ctrls = new IntList();
 		job.ctrlNodelist = new LinkedList<Resource>();
+		job.kvsKeys = new ArrayList<Object>();
 		job.resBackup = new Resource();
 		
-		job.startTime = CommonState.getTime();
-		job.submitTime = 0;
-		job.exeTime = 0;
-		job.finTime = 0;
-		job.backTime = 0;
+		ctx.jobTable.startTime[job.index] = CommonState.getTime();
+		ctx.jobTable.allocTime[job.index] = 0;
+		ctx.jobTable.submitTime[job.index] = 0;
+		ctx.jobTable.exeTime[job.index] = 0;
+		ctx.jobTable.finTime[job.index] = 0;
+		ctx.jobTable.backTime[job.index] = 0;
 		
-		Library.jobMetaData.put(job.jobId, job);
+		ctx.jobTable.put(job);
 		return job;
 	}
 	
-	public void executeJob(String jobId)
+	/* starts the next jobs of the workload, until submitWindow jobs are 
+	 * getting their nodes. A job joins the others only if the free nodes 
+	 * known to the controller cover them all, as jobs that each hold part 
+	 * of their nodes keep each other waiting */
+	public void fillSubmitWindow()
 	{
-		if (jobId.isEmpty())
+		while (numJobsAllocating < submitWindow && numJobsStart < ctx.numJobsPerCtrl)
 		{
-			ctrlMaxProcTime = updateTime(Library.jobProcTime, ctrlMaxProcTime);
-			String[] jobArray = parseJob(Library.workload.get(numJobsStart + jobStartIndex));
-			Job job = createJob(jobArray);
-			jobId = job.jobId;
+			if (numJobsAllocating > 0)
+			{
+				JobDesc jobDesc = ctx.workload.getJob(numJobsStart + jobStartIndex);
+				if (numNodesAllocating + jobDesc.numNodeRequired > ctrlSelector.knownFree())
+				{
+					break;
+				}
+			}
+			executeJob(-1);
 		}
-		ctrlMaxFwdTime = timeCompOverride(ctrlMaxFwdTime, ctrlMaxProcTime);
-		String key = "node-" + Integer.toString(id);
-		Pair resPair = new Pair(key, null, null, jobId, "lookup", "lookup resource");
-		kvsClientInteract(resPair);
 	}
 	
-	public void splitResource(Resource initRes, Resource firstRes, Resource lastRes, int num)
+	/* jobIndex is -1 for the next job in the workload */
+	public void executeJob(int jobIndex)
 	{
-		firstRes.numAvailNode = num;
-		for (int i = 0; i < num; i++)
+		boolean newJob = jobIndex == -1;
+		if (newJob)
+		{
+			ctrlMaxProcTime = updateTime(ctx.jobProcTime, ctrlMaxProcTime);
+			JobDesc jobDesc = ctx.workload.getJob(numJobsStart + jobStartIndex);
+			Job job = createJob(jobDesc);
+			jobIndex = job.index;
+			numJobsAllocating++;
+			numNodesAllocating += job.numNodeRequired;
+		}
+		ctrlMaxFwdTime = timeCompOverride(ctrlMaxFwdTime, ctrlMaxProcTime);
+		/* only a new job uses the cache, a job that had to give its nodes 
+		 * back meets contention, where the cache would have all of them grab
+		 * their own nodes again at once */
+		KVSReturnObj cached = cacheRes && newJob ? resCache.get(id) : null;
+		if (cached != null && ((Resource)cached.value).numAvailNode > 0)
 		{
-			firstRes.nodeLL.add(initRes.nodeLL.get(i));
+			/* go straight to the compare and swap, which fails and brings 
+			 * the current value back if the cache is stale */
+			ctx.numResCacheHit++;
+			allocateRes(cachedLookup(cached, jobIndex));
+			return;
 		}
-		lastRes.numAvailNode = initRes.numAvailNode - num;
-		for (int i = 0; i < lastRes.numAvailNode; i++)
+		ctx.numAllocLookup++;
+		Pair resPair = new Pair(id, null, null, jobIndex, 
+								KVSOp.LOOKUP, KVSPurpose.LOOKUP_RESOURCE);
+		kvsClientInteract(resPair);
+	}
+	
+	/* a lookup of the resource of a controller, answered from the cache */
+	public KVSReturnObj cachedLookup(KVSReturnObj cached, int jobIndex)
+	{
+		KVSReturnObj kvsRetObj = new KVSReturnObj();
+		kvsRetObj.key = cached.key;
+		kvsRetObj.value = cached.value;
+		kvsRetObj.version = cached.version;
+		kvsRetObj.identifier = jobIndex;
+		kvsRetObj.type = KVSOp.LOOKUP;
+		kvsRetObj.forWhat = KVSPurpose.LOOKUP_RESOURCE;
+		kvsRetObj.result = true;
+		return kvsRetObj;
+	}
+	
+	/* a compare and swap against the seen value, or only against its version 
+	 * if versioned compare and swap is enabled 
+	 */
+	public Pair cswapPair(KVSReturnObj kvsRetObj, Object attemptValue, int forWhat)
+	{
+		Object expected = versionedCswap ? null : kvsRetObj.value;
+		if (attemptValue instanceof Resource)	// assume it goes through
 		{
-			lastRes.nodeLL.add(initRes.nodeLL.get(i + num));
+			ctrlSelector.observe((Integer)kvsRetObj.key, (Resource)attemptValue);
 		}
+		Pair pair = new Pair(kvsRetObj.key, expected, attemptValue, 
+				kvsRetObj.identifier, KVSOp.CSWAP, forWhat);
+		pair.version = kvsRetObj.version;
+		return pair;
+	}
+	
+	public void splitResource(Resource initRes, Resource firstRes, Resource lastRes, int num)
+	{
+		initRes.split(firstRes, lastRes, num);
 	}
 	
-	public void randSelect(String identifier)
+	/* picks another controller for the nodes the job still needs */
+	public void randSelect(int identifier)
 	{
-		String anoCtrlId = Library.memList[CommonState.r.nextInt(Library.memList.length)];
-		Pair resPair = new Pair(anoCtrlId, null, null, identifier, "lookup", "lookup resource");
+		Job job = ctx.jobTable.get(identifier);
+		int anoCtrlId = ctrlSelector.select(job.numNodeRequired - job.nodelist.size(), 
+				job.lastEmpty);
+		job.lastEmpty = false;
+		ctx.numAllocLookup++;
+		Pair resPair = new Pair(anoCtrlId, null, null, identifier, 
+								KVSOp.LOOKUP, KVSPurpose.LOOKUP_RESOURCE);
 		kvsClientInteract(resPair);
 	}
 	
@@ -356,52 +645,70 @@ public class PeerProtocol implements EDProtocol
 	 * */
 	public void releaseResLookup(KVSReturnObj kvsRetObj, int i)
 	{
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
-		if (job.ctrls.size() > 0)
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		int forWhat = i == 0 ? KVSPurpose.RELEASE_RESOURCE0 : KVSPurpose.RELEASE_RESOURCE1;
+		if (job.ctrls.size() > 0 && (batchKVS || fanOutKVS))
 		{
-			String firstCtrl = job.ctrls.getFirst();
-			Pair pair = new Pair(firstCtrl, null, null, job.jobId, 
-								"lookup", "release resource" + Integer.toString(i));
+			releaseResAll(job, forWhat);
+		}
+		else if (job.ctrls.size() > 0)
+		{
+			int firstCtrl = job.ctrls.getFirst();
+			Pair pair = new Pair(firstCtrl, null, null, job.index, KVSOp.LOOKUP, forWhat);
 			kvsClientInteract(pair);
 		}
 		else 
 		{
-			
-			if (job.nodelist.size() > 0)
-			{
-				job.nodelist.clear();
-			}
-			if (i == 0)
+			releaseResDone(job, i);
+		}
+	}
+	
+	/* looks up the resources of all the controllers of the job at once, the
+	 * nodes are then given back to each with a compare and swap, and
+	 * job.numKVSPending counts the controllers not done yet */
+	public void releaseResAll(Job job, int forWhat)
+	{
+		ArrayList<Pair> pairs = new ArrayList<Pair>(job.ctrls.size());
+		for (int j = 0; j < job.ctrls.size(); j++)
+		{
+			pairs.add(new Pair(job.ctrls.get(j), null, null, job.index, KVSOp.LOOKUP, forWhat));
+		}
+		job.numKVSPending = job.ctrls.size();
+		kvsAll(job, pairs, forWhat);
+	}
+	
+	/* all resources of the job are given back */
+	public void releaseResDone(Job job, int i)
+	{
+		if (job.nodelist.size() > 0)
+		{
+			job.nodelist.clear();
+		}
+		if (i == 0)
+		{
+			Message msg = new Message(id, id, MsgType.REALLOCATION, job.index);
+			schedule(sleepLength, msg, id);
+		}
+		if (i == 1)
+		{
+			if (id == job.client)
 			{
-				Message msg = new Message(id, id, "reallocation", job.jobId);
-				EDSimulator.add(sleepLength, msg, Network.get(id), par.pid);
+				finishJob(job);
 			}
-			if (i == 1)
+			else
 			{
-				int jobClientId = Integer.parseInt(job.jobId.split(" ")[0].substring(5));
-				if (id == jobClientId)
-				{
-					job.backTime = ctrlMaxFwdTime;
-					numJobsFin++;
-					System.out.println("Number of jobs finished is:" + numJobsFin);
-					Library.numJobFinished++;
-					printOutResult();
-				}
-				else
-				{
-					Pair pair = new Pair(kvsRetObj.identifier + "Fin", "done", 
-							null, kvsRetObj.identifier, "insert", "notify job fin");
-					kvsClientInteract(pair);
-				}
+				Pair pair = new Pair(job.jobId + "Fin", "done", 
+						null, job.index, KVSOp.INSERT, KVSPurpose.NOTIFY_JOB_FIN);
+				kvsClientInteract(pair);
 			}
 		}
 	}
 	
 	public void allocateRes(KVSReturnObj kvsRetObj)
 	{
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
 		int numMoreNodeRequired = job.numNodeRequired - job.nodelist.size();
-		job.ctrlBackup = null; job.resBackup.numAvailNode = 0; job.resBackup.nodeLL.clear();
+		job.ctrlBackup = -1; job.resBackup.clear();
 		Resource seenRes = (Resource)kvsRetObj.value;
 		int numNodeAllocated = seenRes.numAvailNode >= numMoreNodeRequired ? 
 				numMoreNodeRequired : seenRes.numAvailNode;
@@ -409,19 +716,20 @@ public class PeerProtocol implements EDProtocol
 		{
 			Resource attemptRes = new Resource();
 			splitResource(seenRes, job.resBackup, attemptRes, numNodeAllocated);
-			job.ctrlBackup = (String)kvsRetObj.key;
-			Pair cswapPair = new Pair(kvsRetObj.key, kvsRetObj.value, attemptRes, job.jobId,
-										"compare and swap", "allocate resource");
-			kvsClientInteract(cswapPair);
+			job.ctrlBackup = (Integer)kvsRetObj.key;
+			ctx.numAllocCswap++;
+			kvsClientInteract(cswapPair(kvsRetObj, attemptRes, KVSPurpose.ALLOCATE_RESOURCE));
 		}
 		else	// there are no more available nodes for the selected controller
 		{
+			ctx.numAllocEmpty++;
 			job.numTry++;
+			job.lastEmpty = true;
 			if (job.numTry < maxNumTry)
 			{
-				Message msg = new Message(id, id, "retry", job.jobId);
-				EDSimulator.add(sleepLength, msg, Network.get(id), par.pid);
-				//randSelect(job.jobId);
+				Message msg = new Message(id, id, MsgType.RETRY, job.index);
+				schedule(sleepLength, msg, id);
+				//randSelect(job.index);
 			}
 			else
 			{
@@ -433,36 +741,33 @@ public class PeerProtocol implements EDProtocol
 	
 	public void mergeResource(Resource firstRes, Resource secRes)
 	{
-		firstRes.numAvailNode += secRes.numAvailNode;
-		for (int i = 0; i < secRes.numAvailNode; i++)
-		{
-			firstRes.nodeLL.add(secRes.nodeLL.get(i));
-		}
+		firstRes.merge(secRes);
 	}
 	
 	public void releaseResCswap(KVSReturnObj kvsRetObj)
 	{
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
 		Resource seenRes = (Resource)kvsRetObj.value;
 		Resource attemptRes = new Resource();
 		mergeResource(attemptRes, seenRes);
-		mergeResource(attemptRes, job.ctrlNodelist.getFirst());
-		Pair pair = new Pair(kvsRetObj.key, seenRes, attemptRes, 
-				kvsRetObj.identifier, "compare and swap", kvsRetObj.forWhat);
-		kvsClientInteract(pair);
+		/* the first controller, unless they are all released at once */
+		int pos = job.ctrls.indexOf((Integer)kvsRetObj.key);
+		mergeResource(attemptRes, job.ctrlNodelist.get(pos));
+		kvsClientInteract(cswapPair(kvsRetObj, attemptRes, kvsRetObj.forWhat));
 	}
 	
 	/* insert (jobid, origin controller id) */
 	public void insertJobOriginCtrl(Job job)
 	{
-		Pair jobOriginCtrlPair = new Pair(job.jobId, "node-" + Integer.toString(id), 
-										null, job.jobId, "insert", "job origin ctrl");
+		Pair jobOriginCtrlPair = new Pair(job.jobId, id, null, job.index, 
+										KVSOp.INSERT, KVSPurpose.JOB_ORIGIN_CTRL);
+		job.kvsKeys.add(jobOriginCtrlPair.key);
 		kvsClientInteract(jobOriginCtrlPair);
 	}
 	
 	public void cswapAllocResSuc(KVSReturnObj kvsRetObj)
 	{
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
 		int pos = job.ctrls.indexOf(job.ctrlBackup);
 		if (pos == -1)
 		{
@@ -476,31 +781,53 @@ public class PeerProtocol implements EDProtocol
 			Resource res = job.ctrlNodelist.get(pos);
 			mergeResource(res, job.resBackup);
 		}
-		for (int i = 0; i < job.resBackup.numAvailNode; i++)
-		{
-			job.nodelist.add(job.resBackup.nodeLL.get(i));
-		}
+		job.resBackup.addTo(job.nodelist);
 		if (job.nodelist.size() < job.numNodeRequired)
 		{
-			randSelect(job.jobId);
+			randSelect(job.index);
 		}
 		else
 		{
-			if (numJobsStart < Library.numJobsPerCtrl)
+			ctx.jobTable.allocTime[job.index] = CommonState.getTime();
+			numJobsAllocating--;
+			numNodesAllocating -= job.numNodeRequired;
+			fillSubmitWindow();	//start to handle the next job
+			if (batchKVS || fanOutKVS)
+			{
+				insertJobMetadata(job);
+			}
+			else
 			{
-				executeJob(new String());	//start to handle the next job
+				insertJobOriginCtrl(job);
 			}
-			insertJobOriginCtrl(job);
 		}
 	}
 	
 	public void insertSelfHereMsg(KVSReturnObj kvsRetObj)
 	{
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		if (selfHere(job))
+		{
+			String key = job.jobId + ctx.nodeName(id);
+			Pair pair = new Pair(key, "I am here", null, job.index, 
+								KVSOp.INSERT, KVSPurpose.MARK_SELF);
+			job.kvsKeys.add(key);
+			kvsClientInteract(pair);
+		}
+		else
+		{
+			insertJobCtrls(kvsRetObj);
+		}
+	}
+	
+	/* whether this controller is involved in the job and has the lowest id 
+	 * of the involved ones */
+	public boolean selfHere(Job job)
+	{
 		int flag = 0, selfInv = 0;
 		for (; flag < job.ctrls.size(); flag++)
 		{
-			int target = Integer.parseInt(job.ctrls.get(flag).substring(5));
+			int target = job.ctrls.get(flag);
 			if (target < id)
 			{
 				break;
@@ -513,51 +840,71 @@ public class PeerProtocol implements EDProtocol
 				}
 			}
 		}
-		if (flag == job.ctrls.size() && selfInv == 1)
+		return flag == job.ctrls.size() && selfInv == 1;
+	}
+	
+	/* the inserts of insertJobOriginCtrl, insertSelfHereMsg, insertJobCtrls 
+	 * and insertJobCtrlNodelist all at once, the job is launched when
+	 * every one is back */
+	public void insertJobMetadata(Job job)
+	{
+		ArrayList<Pair> pairs = new ArrayList<Pair>(job.ctrls.size() + 3);
+		pairs.add(new Pair(job.jobId, id, null, job.index, 
+				KVSOp.INSERT, KVSPurpose.JOB_ORIGIN_CTRL));
+		if (selfHere(job))
+		{
+			pairs.add(new Pair(job.jobId + ctx.nodeName(id), "I am here", null, 
+					job.index, KVSOp.INSERT, KVSPurpose.MARK_SELF));
+		}
+		pairs.add(new Pair(job.jobId + ctx.nodeName(id) + "ctrls", job.ctrls, null, 
+				job.index, KVSOp.INSERT, KVSPurpose.JOB_CTRLS));
+		Iterator<Resource> it = job.ctrlNodelist.iterator();
+		for (int i = 0; i < job.ctrls.size(); i++)
 		{
-			String key = job.jobId + "node-" + Integer.toString(id);
-			Pair pair = new Pair(key, "I am here", null, job.jobId, "insert", "mark self");
-			kvsClientInteract(pair);
+			String key = job.jobId + ctx.nodeName(id) + ctx.nodeName(job.ctrls.get(i));
+			pairs.add(new Pair(key, it.next(), null, job.index, 
+					KVSOp.INSERT, KVSPurpose.JOB_CTRL_NODELIST));
 		}
-		else
+		for (Pair pair : pairs)
 		{
-			insertJobCtrls(kvsRetObj);
+			job.kvsKeys.add(pair.key);
 		}
+		job.numKVSPending = pairs.size();
+		kvsAll(job, pairs, KVSPurpose.JOB_METADATA);
 	}
 	
 	/* insert (jobid + origin controller id, involved controller list) */
 	public void insertJobCtrls(KVSReturnObj kvsRetObj)
 	{
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
-		String key = job.jobId + "node-" + Integer.toString(id) + "ctrls";
-		Pair jobCtrlsPair = new Pair(key, job.ctrls, null, job.jobId, "insert", "job ctrls");
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		String key = job.jobId + ctx.nodeName(id) + "ctrls";
+		Pair jobCtrlsPair = new Pair(key, job.ctrls, null, job.index, 
+									 KVSOp.INSERT, KVSPurpose.JOB_CTRLS);
+		job.kvsKeys.add(key);
 		kvsClientInteract(jobCtrlsPair);
 	}
 	
-	/* launch jobs in a tree topology rooted at rank 0 */
-	public void transmitJob(boolean origin, Job job, boolean left)
+	/* launch jobs in a tree topology rooted at rank 0, child is which of 
+	 * the children of this node to send to next */
+	public void transmitJob(boolean origin, Job job, int child)
 	{
-		int pos = job.nodelist.indexOf("node-" + Integer.toString(id));
+		int pos = job.nodelist.indexOf(id);
 		boolean keepTransmit = false;
 		Message jobTransmitMsg = new Message();
 		jobTransmitMsg.sourceId = id;
-		jobTransmitMsg.msgType = "transmit job";
+		jobTransmitMsg.msgType = MsgType.TRANSMIT_JOB;
 		jobTransmitMsg.content = job;
 		if (origin)
 		{
-			jobTransmitMsg.destId = Integer.parseInt(job.nodelist.get(0).substring(5));
+			jobTransmitMsg.destId = job.nodelist.get(0);
 			keepTransmit = true;
 		}
 		else
 		{
-			int next = 2 * pos + 1;
-			if (!left)
-			{
-				next++;
-			}
+			int next = LaunchTree.child(pos, ctx.launchTree.fanOut(job.nodelist.size()), child);
 			if (next < job.nodelist.size())
 			{
-				jobTransmitMsg.destId = Integer.parseInt(job.nodelist.get(next).substring(5));
+				jobTransmitMsg.destId = job.nodelist.get(next);
 				keepTransmit = true;
 			}
 			else
@@ -570,12 +917,12 @@ public class PeerProtocol implements EDProtocol
 			long time = 0;
 			if (origin)
 			{
-				ctrlMaxFwdTime = updateTime(Library.sendOverhead, ctrlMaxFwdTime);
+				ctrlMaxFwdTime = updateTime(ctx.sendOverhead, ctrlMaxFwdTime);
 				time = ctrlMaxFwdTime;
 			}
 			else
 			{
-				cdMaxFwdTime = updateTime(Library.sendOverhead, cdMaxFwdTime);
+				cdMaxFwdTime = updateTime(ctx.sendOverhead, cdMaxFwdTime);
 				time = cdMaxFwdTime;
 			}
 			sendMsg(jobTransmitMsg, time);
@@ -584,23 +931,24 @@ public class PeerProtocol implements EDProtocol
 	
 	public void launchJob(Job job)
 	{
-		Collections.sort(job.nodelist, new NodelistComp());
-		job.submitTime = CommonState.getTime();
-		Library.jobMetaData.put(job.jobId, job);
-		transmitJob(true, job, false);
+		job.nodelist.sort();
+		ctx.jobTable.submitTime[job.index] = CommonState.getTime();
+		transmitJob(true, job, 0);
 	}
 	
 	/* insert the resource used of each controller for a job */
 	public void insertJobCtrlNodelist(KVSReturnObj kvsRetObj)
 	{
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
-		String key = job.jobId + "node-" + Integer.toString(id);
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		String key = job.jobId + ctx.nodeName(id);
 		Resource valueRes;
-		if (kvsRetObj.forWhat.equals("job ctrls"))	// if this is the fisrt controller
+		if (kvsRetObj.forWhat == KVSPurpose.JOB_CTRLS)	// if this is the fisrt controller
 		{
-			key += job.ctrls.get(0);
+			key += ctx.nodeName(job.ctrls.get(0));
 			valueRes = job.ctrlNodelist.get(0);
-			Pair pair = new Pair(key, valueRes, null, job.jobId, "insert", "job ctrl nodelist");
+			Pair pair = new Pair(key, valueRes, null, job.index, 
+								 KVSOp.INSERT, KVSPurpose.JOB_CTRL_NODELIST);
+			job.kvsKeys.add(key);
 			kvsClientInteract(pair);
 		}
 		else
@@ -611,10 +959,11 @@ public class PeerProtocol implements EDProtocol
 			if (pos < job.ctrlNodelist.size() - 1 && pos >=0 )
 			{
 				pos++;
-				key += job.ctrls.get(pos);
+				key += ctx.nodeName(job.ctrls.get(pos));
 				valueRes = job.ctrlNodelist.get(pos);
-				Pair pair = new Pair(key, valueRes, null, job.jobId, 
-									"insert", "job ctrl nodelist");
+				Pair pair = new Pair(key, valueRes, null, job.index, 
+									KVSOp.INSERT, KVSPurpose.JOB_CTRL_NODELIST);
+				job.kvsKeys.add(key);
 				kvsClientInteract(pair);
 			}
 			else	// if this is the last controller, then can launch the job
@@ -626,19 +975,30 @@ public class PeerProtocol implements EDProtocol
 	
 	public void procKVSRetEvent(Message msg)
 	{
-		ctrlMaxFwdTime = updateTime(Library.recvOverhead, ctrlMaxFwdTime);
+		ctrlMaxFwdTime = updateTime(ctx.recvOverhead, ctrlMaxFwdTime);
 		KVSReturnObj kvsRetObj = (KVSReturnObj)msg.content;
+		long latency = ctrlMaxFwdTime - kvsRetObj.sendTime;
+		ctx.kvsOpLatency[kvsRetObj.type].record(latency);
+		observeRes(kvsRetObj);
+		if (kvsRetObj.type == KVSOp.BATCH)
+		{
+			procBatchRet(kvsRetObj, msg.sourceId, latency);
+			return;
+		}
 		if (!kvsRetObj.result)
 		{
-			if (kvsRetObj.type.equals("compare and swap"))
+			if (kvsRetObj.type == KVSOp.CSWAP)
 			{
-				if (kvsRetObj.forWhat.equals("allocate resource"))
+				ctx.jobTable.get(kvsRetObj.identifier).cswapRetryTime += latency;
+				switch (kvsRetObj.forWhat)
 				{
-					allocateRes(kvsRetObj);
-				}
-				if (kvsRetObj.forWhat.startsWith("release resource"))
-				{
-					releaseResCswap(kvsRetObj);
+					case KVSPurpose.ALLOCATE_RESOURCE:
+						allocateRes(kvsRetObj);
+						break;
+					case KVSPurpose.RELEASE_RESOURCE0:
+					case KVSPurpose.RELEASE_RESOURCE1:
+						releaseResCswap(kvsRetObj);
+						break;
 				}
 			}
 			else
@@ -647,178 +1007,397 @@ public class PeerProtocol implements EDProtocol
 						kvsRetObj.identifier, kvsRetObj.type, kvsRetObj.forWhat);
 				kvsClientInteract(pair);
 			}
+			return;
 		}
-		else
+		switch (kvsRetObj.type)
 		{
-			if (kvsRetObj.type.equals("compare and swap"))
+			case KVSOp.CSWAP:
+				procCswapRet(kvsRetObj);
+				break;
+			case KVSOp.INSERT:
+				procInsertRet(kvsRetObj);
+				break;
+			case KVSOp.LOOKUP:
+				procLookupRet(kvsRetObj);
+				break;
+			case KVSOp.CALLBACK:
+				callbackSuc(kvsRetObj);
+				break;
+		}
+	}
+	
+	/* the resource values of the controllers in a reply tell their free nodes,
+	 * and are kept with cacheRes, except after a successful compare and swap, 
+	 * which returns the old value unless cacheRes is set */
+	public void observeRes(KVSReturnObj kvsRetObj)
+	{
+		if (kvsRetObj.type == KVSOp.BATCH)
+		{
+			KVSReturnObj[] rets = (KVSReturnObj[])kvsRetObj.value;
+			for (int i = 0; i < rets.length; i++)
 			{
-				if (kvsRetObj.forWhat.equals("allocate resource"))
-				{
-					cswapAllocResSuc(kvsRetObj);
-				}
-				if (kvsRetObj.forWhat.startsWith("release resource"))
-				{
-					Job job = Library.jobMetaData.get(kvsRetObj.identifier);
-					job.ctrls.removeFirst();
-					job.ctrlNodelist.removeFirst();
-					char releaseType = kvsRetObj.forWhat.charAt(kvsRetObj.forWhat.length() - 1);
-					if (releaseType == '0')
-					{
-						releaseResLookup(kvsRetObj, 0);
-					}
-					else
-					{
-						releaseResLookup(kvsRetObj, 1);
-					}
-				}
+				observeRes(rets[i]);
 			}
-			else if (kvsRetObj.type.equals("insert"))
+		}
+		else if (kvsRetObj.key instanceof Integer && kvsRetObj.value instanceof Resource && 
+				(cacheRes || !(kvsRetObj.type == KVSOp.CSWAP && kvsRetObj.result)))
+		{
+			ctrlSelector.observe((Integer)kvsRetObj.key, (Resource)kvsRetObj.value);
+			if (cacheRes)
 			{
-				if (kvsRetObj.forWhat.equals("insert resource"))
-				{
-					executeJob(new String());
-				}
-				if (kvsRetObj.forWhat.equals("job origin ctrl"))
-				{
-					insertSelfHereMsg(kvsRetObj);
-					//insertJobCtrls(kvsRetObj);
-				}
-				if (kvsRetObj.forWhat.equals("mark self"))
+				resCache.put((Integer)kvsRetObj.key, kvsRetObj);
+			}
+		}
+	}
+	
+	/* the results of the operations of a job on one server */
+	public void procBatchRet(KVSReturnObj kvsRetObj, int serverId, long latency)
+	{
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		KVSReturnObj[] rets = (KVSReturnObj[])kvsRetObj.value;
+		switch (kvsRetObj.forWhat)
+		{
+			case KVSPurpose.JOB_METADATA:
+				job.numKVSPending -= rets.length;
+				if (job.numKVSPending == 0)
 				{
-					insertJobCtrls(kvsRetObj);
+					launchJob(job);
 				}
-				if (kvsRetObj.forWhat.equals("job ctrls"))	// This is where I left last time
+				break;
+			case KVSPurpose.JOB_CTRL_NODELIST:
+				job.numKVSPending -= rets.length;
+				if (job.numKVSPending == 0)
 				{
-					insertJobCtrlNodelist(kvsRetObj);
+					releaseResLookup(kvsRetObj, 1);
 				}
-				if (kvsRetObj.forWhat.equals("job ctrl nodelist"))
+				break;
+			case KVSPurpose.RELEASE_RESOURCE0:
+			case KVSPurpose.RELEASE_RESOURCE1:
+				/* a compare and swap for every lookup, and again for every
+				 * compare and swap that failed */
+				ArrayList<Pair> pairs = new ArrayList<Pair>();
+				for (int i = 0; i < rets.length; i++)
 				{
-					insertJobCtrlNodelist(kvsRetObj);
+					if (rets[i].type == KVSOp.CSWAP && rets[i].result)
+					{
+						job.numKVSPending--;
+						continue;
+					}
+					int pos = job.ctrls.indexOf((Integer)rets[i].key);
+					Resource attemptRes = new Resource();
+					mergeResource(attemptRes, (Resource)rets[i].value);
+					mergeResource(attemptRes, job.ctrlNodelist.get(pos));
+					pairs.add(cswapPair(rets[i], attemptRes, kvsRetObj.forWhat));
 				}
-				//if (kvsRetObj.forWhat.equals("notify job fin"))
-				//{
-				//	releaseResLookup(kvsRetObj, 1);
-				//}
-			}
-			else if (kvsRetObj.type.equals("lookup"))
-			{
-				if (kvsRetObj.forWhat.equals("lookup resource"))
+				if (pairs.size() > 0)
 				{
-					allocateRes(kvsRetObj);
+					if (rets[0].type == KVSOp.CSWAP)
+					{
+						job.cswapRetryTime += latency;
+					}
+					kvsBatch(job, pairs.toArray(new Pair[pairs.size()]), 
+							kvsRetObj.forWhat, serverId);
 				}
-				if (kvsRetObj.forWhat.startsWith("release resource"))
+				else if (job.numKVSPending == 0)
 				{
-					releaseResCswap(kvsRetObj);
+					job.ctrls.clear();
+					job.ctrlNodelist.clear();
+					releaseResDone(job, kvsRetObj.forWhat == 
+							KVSPurpose.RELEASE_RESOURCE0 ? 0 : 1);
 				}
-				if (kvsRetObj.forWhat.equals("mark self"))
+				break;
+		}
+	}
+	
+	public void procCswapRet(KVSReturnObj kvsRetObj)
+	{
+		switch (kvsRetObj.forWhat)
+		{
+			case KVSPurpose.ALLOCATE_RESOURCE:
+				cswapAllocResSuc(kvsRetObj);
+				break;
+			case KVSPurpose.RELEASE_RESOURCE0:
+			case KVSPurpose.RELEASE_RESOURCE1:
+				Job job = ctx.jobTable.get(kvsRetObj.identifier);
+				if (fanOutKVS)
 				{
-					markSelfRet(kvsRetObj);
+					job.numKVSPending--;
+					if (job.numKVSPending == 0)
+					{
+						job.ctrls.clear();
+						job.ctrlNodelist.clear();
+						releaseResDone(job, kvsRetObj.forWhat == 
+								KVSPurpose.RELEASE_RESOURCE0 ? 0 : 1);
+					}
+					break;
 				}
-				if (kvsRetObj.forWhat.equals("job origin ctrl"))
+				job.ctrls.removeFirst();
+				job.ctrlNodelist.removeFirst();
+				if (kvsRetObj.forWhat == KVSPurpose.RELEASE_RESOURCE0)
 				{
-					jobOriginCtrlMsgProc(kvsRetObj);
+					releaseResLookup(kvsRetObj, 0);
 				}
-				if (kvsRetObj.forWhat.equals("job ctrls"))
+				else
 				{
-					lookupJobCtrlNodelist(kvsRetObj);
+					releaseResLookup(kvsRetObj, 1);
 				}
-				if (kvsRetObj.forWhat.equals("job ctrl nodelist"))
+				break;
+		}
+	}
+	
+	public void procInsertRet(KVSReturnObj kvsRetObj)
+	{
+		switch (kvsRetObj.forWhat)
+		{
+			case KVSPurpose.INSERT_RESOURCE:
+				fillSubmitWindow();
+				break;
+			case KVSPurpose.JOB_ORIGIN_CTRL:
+				insertSelfHereMsg(kvsRetObj);
+				//insertJobCtrls(kvsRetObj);
+				break;
+			case KVSPurpose.MARK_SELF:
+				insertJobCtrls(kvsRetObj);
+				break;
+			case KVSPurpose.JOB_CTRLS:
+			case KVSPurpose.JOB_CTRL_NODELIST:
+				insertJobCtrlNodelist(kvsRetObj);
+				break;
+			case KVSPurpose.JOB_METADATA:
+				Job job = ctx.jobTable.get(kvsRetObj.identifier);
+				job.numKVSPending--;
+				if (job.numKVSPending == 0)
 				{
-					lookupJobCtrlNodelist(kvsRetObj);
+					launchJob(job);
 				}
-			}
-			else if (kvsRetObj.type.equals("callback"))
-			{
-				callbackSuc(kvsRetObj);
-			}
+				break;
+			//case KVSPurpose.NOTIFY_JOB_FIN:
+			//	releaseResLookup(kvsRetObj, 1);
+			//	break;
+		}
+	}
+	
+	public void procLookupRet(KVSReturnObj kvsRetObj)
+	{
+		switch (kvsRetObj.forWhat)
+		{
+			case KVSPurpose.LOOKUP_RESOURCE:
+				allocateRes(kvsRetObj);
+				break;
+			case KVSPurpose.RELEASE_RESOURCE0:
+			case KVSPurpose.RELEASE_RESOURCE1:
+				releaseResCswap(kvsRetObj);
+				break;
+			case KVSPurpose.MARK_SELF:
+				markSelfRet(kvsRetObj);
+				break;
+			case KVSPurpose.JOB_ORIGIN_CTRL:
+				jobOriginCtrlMsgProc(kvsRetObj);
+				break;
+			case KVSPurpose.JOB_CTRLS:
+			case KVSPurpose.JOB_CTRL_NODELIST:
+				lookupJobCtrlNodelist(kvsRetObj);
+				break;
 		}
 	}
 	
 	public void transmitJobMsgProc(Message msg)
 	{
-		cdMaxFwdTime = updateTime(Library.recvOverhead, cdMaxFwdTime);
-		Job job = Library.jobMetaData.get(((Job)msg.content).jobId);
+		cdMaxFwdTime = updateTime(ctx.recvOverhead, cdMaxFwdTime);
+		Job job = ctx.jobTable.get(((Job)msg.content).index);
+		if (ctx.launchTree.treeAck())
+		{
+			transmitSubtree(job, msg.sourceId);
+			return;
+		}
 		job.numNodeTransmitted++;
-		Message ackMsg = new Message(id, msg.sourceId, "transmit job ack", job);
-		cdMaxFwdTime = updateTime(Library.sendOverhead, cdMaxFwdTime);
+		Message ackMsg = new Message(id, msg.sourceId, MsgType.TRANSMIT_JOB_ACK, job);
+		cdMaxFwdTime = updateTime(ctx.sendOverhead, cdMaxFwdTime);
 		sendMsg(ackMsg, cdMaxFwdTime);
-		transmitJob(false, job, true);
+		transmitJob(false, job, 0);
+	}
+	
+	/* with treeAck, sends the job to all the children at once, and acks the
+	 * parent when every child has acked its subtree, or at once for a leaf */
+	public void transmitSubtree(Job job, int parent)
+	{
+		int pos = job.nodelist.indexOf(id);
+		int fanOut = ctx.launchTree.fanOut(job.nodelist.size());
+		int numChild = 0;
+		for (int i = 0; i < fanOut; i++)
+		{
+			int next = LaunchTree.child(pos, fanOut, i);
+			if (next >= job.nodelist.size())
+			{
+				break;
+			}
+			Message jobTransmitMsg = new Message(id, job.nodelist.get(next), 
+					MsgType.TRANSMIT_JOB, job);
+			cdMaxFwdTime = updateTime(ctx.sendOverhead, cdMaxFwdTime);
+			sendMsg(jobTransmitMsg, cdMaxFwdTime);
+			numChild++;
+		}
+		if (numChild == 0)
+		{
+			ackSubtree(job, parent);
+		}
+		else
+		{
+			pendingAcks.put(job.index, new int[] {parent, numChild});
+		}
+	}
+	
+	public void ackSubtree(Job job, int parent)
+	{
+		Message ackMsg = new Message(id, parent, MsgType.TRANSMIT_JOB_ACK, job);
+		cdMaxFwdTime = updateTime(ctx.sendOverhead, cdMaxFwdTime);
+		sendMsg(ackMsg, cdMaxFwdTime);
+	}
+	
+	/* with treeAck, the ack of the root means the whole job has the tree, 
+	 * any other ack is from a child of this node */
+	public void treeAckMsgProc(Message msg)
+	{
+		Job job = ctx.jobTable.get(((Job)msg.content).index);
+		if (job.nodelist.indexOf(msg.sourceId) == 0)
+		{
+			ctrlMaxFwdTime = updateTime(ctx.recvOverhead, ctrlMaxFwdTime);
+			jobTransmitted(job, ctrlMaxFwdTime);
+			return;
+		}
+		cdMaxFwdTime = updateTime(ctx.recvOverhead, cdMaxFwdTime);
+		int[] pending = pendingAcks.get(job.index);
+		pending[1]--;
+		if (pending[1] == 0)
+		{
+			pendingAcks.remove(job.index);
+			ackSubtree(job, pending[0]);
+		}
 	}
 	
 	public void transmitJobAckMsgProc(Message msg)
 	{
-		Job job = Library.jobMetaData.get(((Job)msg.content).jobId);
+		if (ctx.launchTree.treeAck())
+		{
+			treeAckMsgProc(msg);
+			return;
+		}
+		Job job = ctx.jobTable.get(((Job)msg.content).index);
 		job.numNodeTransmitted++;
-		int srcPos = job.nodelist.indexOf("node-" + Integer.toString(msg.sourceId));
-		int curPos = job.nodelist.indexOf("node-" + Integer.toString(id));
+		int srcPos = job.nodelist.indexOf(msg.sourceId);
+		int curPos = job.nodelist.indexOf(id);
 		long time = 0;
 		if (curPos >= 0 && srcPos > 0)
 		{
-			cdMaxFwdTime = updateTime(Library.recvOverhead, cdMaxFwdTime);
+			cdMaxFwdTime = updateTime(ctx.recvOverhead, cdMaxFwdTime);
 			time = cdMaxFwdTime;
 		}
 		else
 		{
-			ctrlMaxFwdTime = updateTime(Library.recvOverhead, ctrlMaxFwdTime);
+			ctrlMaxFwdTime = updateTime(ctx.recvOverhead, ctrlMaxFwdTime);
 			time = ctrlMaxFwdTime;
 		}
 		if (job.numNodeTransmitted == job.numNodeRequired * 2)
 		{
-			for (int i = 0; i < job.nodelist.size(); i++)
-			{
-				Message execJobMsg = new Message(-1, Integer.parseInt(
-						job.nodelist.get(i).substring(5)), "execute job", job);
-				sendMsg(execJobMsg, time);
-			}
-			//int firstNodeId = Integer.parseInt(job.nodelist.getFirst().substring(5));
-			//Node node = Network.get(firstNodeId);
-			//PeerProtocol pp = (PeerProtocol)node.getProtocol(par.pid);
-			String jobClient = job.jobId.split(" ")[0];
-			int jobClientId = Integer.parseInt(jobClient.substring(5));
-			//if (pp.ctrlId != jobClientId)
-			//{
-			//	Pair pair = new Pair(job.jobId + "Fin", null, null, 
-			//			job.jobId, "callback", "wait for notification");
-			//	int destId = hashServer(pair.key);
-			//	Message callbackMsg = new Message(jobClientId, destId, "kvs", pair);
-			//	sendMsg(callbackMsg, time);
-			//}
-			Pair pair = new Pair(job.jobId + jobClient, null, null, 
-								job.jobId, "lookup", "mark self");
-			int destId = hashServer(pair.key);
-			Message lookupMsg = new Message(jobClientId, destId, "kvs", pair);
-			sendMsg(lookupMsg, time);
+			jobTransmitted(job, time);
 		}
 		else
 		{
 			if (curPos >= 0 && srcPos > 0)
 			{
-				if (srcPos == curPos * 2 + 1)
+				int fanOut = ctx.launchTree.fanOut(job.nodelist.size());
+				int child = LaunchTree.childIndex(srcPos, curPos, fanOut);
+				if (child >= 0 && child < fanOut - 1)
 				{
-					transmitJob(false, job, false);
+					transmitJob(false, job, child + 1);
 				}
 			}
 		}
 	}
 	
+	/* every node has the job, start it on all of them */
+	public void jobTransmitted(Job job, long time)
+	{
+		for (int i = 0; i < job.nodelist.size(); i++)
+		{
+			Message execJobMsg = new Message(-1, job.nodelist.get(i), 
+											 MsgType.EXECUTE_JOB, job);
+			sendMsg(execJobMsg, time);
+		}
+		//int firstNodeId = job.nodelist.getFirst();
+		//Node node = Network.get(firstNodeId);
+		//PeerProtocol pp = (PeerProtocol)node.getProtocol(par.pid);
+		String jobClient = ctx.nodeName(job.client);
+		int jobClientId = job.client;
+		//if (pp.ctrlId != jobClientId)
+		//{
+		//	Pair pair = new Pair(job.jobId + "Fin", null, null, 
+		//			job.jobId, KVSOp.CALLBACK, KVSPurpose.WAIT_FOR_NOTIFICATION);
+		//	int destId = hashServer(pair.key);
+		//	Message callbackMsg = new Message(jobClientId, destId, MsgType.KVS, pair);
+		//	sendMsg(callbackMsg, time);
+		//}
+		Pair pair = new Pair(job.jobId + jobClient, null, null, 
+							job.index, KVSOp.LOOKUP, KVSPurpose.MARK_SELF);
+		int destId = hashServer(pair.key);
+		pair.sendTime = time;
+		Message lookupMsg = new Message(jobClientId, destId, MsgType.KVS, pair);
+		sendMsg(lookupMsg, time);
+	}
+	
 	public void sendJobDone(Job job)
 	{
 		if (job.numNodeReturnRes == job.numNodeRequired - 1)
 		{
-			Message jobDoneMsg = new Message(id, ctrlId, "job done", job);
-			cdMaxFwdTime = updateTime(Library.sendOverhead, cdMaxFwdTime);
-			sendMsg(jobDoneMsg, cdMaxFwdTime);
-			job.finTime = CommonState.getTime();
-			Library.jobMetaData.put(job.jobId, job);
+			jobDone(job);
 		}
 	}
 	
+	/* the job has finished on all its nodes */
+	public void jobDone(Job job)
+	{
+		Message jobDoneMsg = new Message(id, ctrlId, MsgType.JOB_DONE, job);
+		cdMaxFwdTime = updateTime(ctx.sendOverhead, cdMaxFwdTime);
+		sendMsg(jobDoneMsg, cdMaxFwdTime);
+		ctx.jobTable.finTime[job.index] = CommonState.getTime();
+	}
+	
+	/* with treeFinish, the job finished here or in the subtree of a child. 
+	 * Once it is done here and in all the subtrees, the parent is told, and 
+	 * the root reports the whole job done */
+	public void finishSubtree(Job job)
+	{
+		int pos = job.nodelist.indexOf(id);
+		int fanOut = ctx.launchTree.fanOut(job.nodelist.size());
+		Integer pending = pendingFinish.get(job.index);
+		if (pending == null)	// a child may finish before this node starts
+		{
+			pending = 1 + LaunchTree.numChildren(pos, fanOut, job.nodelist.size());
+		}
+		pending--;
+		if (pending > 0)
+		{
+			pendingFinish.put(job.index, pending);
+			return;
+		}
+		pendingFinish.remove(job.index);
+		if (pos == 0)
+		{
+			jobDone(job);
+			return;
+		}
+		Message jobFinMsg = new Message(id, job.nodelist.get(LaunchTree.parent(pos, fanOut)), 
+										MsgType.ONE_JOB_FINISH, job);
+		cdMaxFwdTime = updateTime(ctx.sendOverhead, cdMaxFwdTime);
+		sendMsg(jobFinMsg, cdMaxFwdTime);
+	}
+	
 	public void execJobMsgProc(Message msg)
 	{
-		Job job = Library.jobMetaData.get(((Job)msg.content).jobId);
-		if (job.exeTime == 0)
+		Job job = ctx.jobTable.get(((Job)msg.content).index);
+		if (ctx.jobTable.exeTime[job.index] == 0)
 		{
-			job.exeTime = CommonState.getTime();
+			ctx.jobTable.exeTime[job.index] = CommonState.getTime();
 		}
 		//long startTime = System.nanoTime();
 		/*final Runtime rt = Runtime.getRuntime();
@@ -843,15 +1422,20 @@ public class PeerProtocol implements EDProtocol
 //		}
 		//long endTime = System.nanoTime();
 		//long procTime = (endTime - startTime) / 1000;
-		long procTime = (long)(Double.parseDouble(job.argv) * 1000000);
+		long procTime = job.duration;
 		cdMaxProcTime = updateTime(procTime, cdMaxProcTime);
 		cdMaxFwdTime = timeCompOverride(cdMaxFwdTime, cdMaxProcTime);
-		int pos = job.nodelist.indexOf("node-" + Integer.toString(id));
+		if (ctx.launchTree.treeFinish())
+		{
+			finishSubtree(job);
+			return;
+		}
+		int pos = job.nodelist.indexOf(id);
 		if (pos != 0)
 		{
-			Message jobFinMsg = new Message(id, Integer.parseInt(
-					job.nodelist.get(0).substring(5)), "one job finish", job);
-			cdMaxFwdTime = updateTime(Library.sendOverhead, cdMaxFwdTime);
+			Message jobFinMsg = new Message(id, job.nodelist.get(0), 
+											MsgType.ONE_JOB_FINISH, job);
+			cdMaxFwdTime = updateTime(ctx.sendOverhead, cdMaxFwdTime);
 			sendMsg(jobFinMsg, cdMaxFwdTime);
 		}
 		else
@@ -862,47 +1446,55 @@ public class PeerProtocol implements EDProtocol
 	
 	public void oneJobFinMsgProc(Message msg)
 	{
-		cdMaxFwdTime = updateTime(Library.recvOverhead, cdMaxFwdTime);
-		Job job = Library.jobMetaData.get(((Job)msg.content).jobId);
+		cdMaxFwdTime = updateTime(ctx.recvOverhead, cdMaxFwdTime);
+		Job job = ctx.jobTable.get(((Job)msg.content).index);
+		if (ctx.launchTree.treeFinish())
+		{
+			finishSubtree(job);
+			return;
+		}
 		job.numNodeReturnRes++;
 		sendJobDone(job);
 	}
 	
 	public void jobDoneMsgProc(Message msg)
 	{
-		ctrlMaxFwdTime = updateTime(Library.recvOverhead, ctrlMaxFwdTime);
+		ctrlMaxFwdTime = updateTime(ctx.recvOverhead, ctrlMaxFwdTime);
 		Job job = (Job)msg.content;
-		Pair pair = new Pair(job.jobId, null, null, job.jobId, "lookup", "job origin ctrl");
+		Pair pair = new Pair(job.jobId, null, null, job.index, 
+							 KVSOp.LOOKUP, KVSPurpose.JOB_ORIGIN_CTRL);
 		kvsClientInteract(pair);
 	}
 	
 	public void markSelfRet(KVSReturnObj kvsRetObj)
 	{
 		String selfHere = (String)kvsRetObj.value;
-		if (selfHere == null || !selfHere.equals("I am here"))
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		if (job != null && (selfHere == null || !selfHere.equals("I am here")))
 		{
-			Pair pair = new Pair(kvsRetObj.identifier + "Fin", null, null, kvsRetObj.identifier, 
-								  "callback", "wait for notification");
+			Pair pair = new Pair(job.jobId + "Fin", null, null, job.index, 
+								  KVSOp.CALLBACK, KVSPurpose.WAIT_FOR_NOTIFICATION);
 			kvsClientInteract(pair);
 		}
 	}
 	
 	public void jobOriginCtrlMsgProc(KVSReturnObj kvsRetObj)
 	{
-		String originCtrl = (String)kvsRetObj.value;
-		Pair pair = new Pair(kvsRetObj.identifier + originCtrl + "ctrls", null, null, 
-				              kvsRetObj.identifier, "lookup", "job ctrls");
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		String originCtrl = ctx.nodeName((Integer)kvsRetObj.value);
+		Pair pair = new Pair(job.jobId + originCtrl + "ctrls", null, null, 
+				              job.index, KVSOp.LOOKUP, KVSPurpose.JOB_CTRLS);
 		kvsClientInteract(pair);
-		//if (originCtrl.equals("node-" + Integer.toString(id)))
+		//if (originCtrl.equals(ctx.nodeName(id)))
 		//{
-		//	Job job = Library.jobMetaData.get(kvsRetObj.identifier);
-		//	job.backTime = ctrlMaxFwdTime;
+		//	Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		//	ctx.jobTable.backTime[job.index] = ctrlMaxFwdTime;
 			//releaseResLookup(kvsRetObj, 1);
 		//}
 		/*else
 		{
-			Pair pair = new Pair(kvsRetObj.identifier + "Fin", "done", 
-					null, kvsRetObj.identifier, "insert", "notify job fin");
+			Pair pair = new Pair(job.jobId + "Fin", "done", 
+					null, job.index, KVSOp.INSERT, KVSPurpose.NOTIFY_JOB_FIN);
 			kvsClientInteract(pair);
 		}*/
 		//releaseResLookup(kvsRetObj,1);
@@ -910,12 +1502,32 @@ public class PeerProtocol implements EDProtocol
 	
 	public void lookupJobCtrlNodelist(KVSReturnObj kvsRetObj)
 	{
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
-		String key = job.jobId + job.jobId.split(" ")[0];
-		if (kvsRetObj.forWhat.equals("job ctrls"))	// if this is the fisrt controller
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		String key = job.jobId + ctx.nodeName(job.client);
+		if (kvsRetObj.forWhat == KVSPurpose.JOB_CTRLS && (batchKVS || fanOutKVS))
 		{
-			key += job.ctrls.get(0);
-			Pair pair = new Pair(key, null, null, job.jobId, "lookup", "job ctrl nodelist");
+			ArrayList<Pair> pairs = new ArrayList<Pair>(job.ctrls.size());
+			for (int i = 0; i < job.ctrls.size(); i++)
+			{
+				pairs.add(new Pair(key + ctx.nodeName(job.ctrls.get(i)), null, null, 
+						job.index, KVSOp.LOOKUP, KVSPurpose.JOB_CTRL_NODELIST));
+			}
+			job.numKVSPending = pairs.size();
+			kvsAll(job, pairs, KVSPurpose.JOB_CTRL_NODELIST);
+		}
+		else if (fanOutKVS)	// one of the nodelists is back
+		{
+			job.numKVSPending--;
+			if (job.numKVSPending == 0)
+			{
+				releaseResLookup(kvsRetObj, 1);
+			}
+		}
+		else if (kvsRetObj.forWhat == KVSPurpose.JOB_CTRLS)	// if this is the fisrt controller
+		{
+			key += ctx.nodeName(job.ctrls.get(0));
+			Pair pair = new Pair(key, null, null, job.index, 
+								 KVSOp.LOOKUP, KVSPurpose.JOB_CTRL_NODELIST);
 			kvsClientInteract(pair);
 		}
 		else
@@ -926,9 +1538,9 @@ public class PeerProtocol implements EDProtocol
 			if (pos < job.ctrlNodelist.size() - 1 && pos >=0 )
 			{
 				pos++;
-				key += job.ctrls.get(pos);
-				Pair pair = new Pair(key, null, null, job.jobId, 
-									"lookup", "job ctrl nodelist");
+				key += ctx.nodeName(job.ctrls.get(pos));
+				Pair pair = new Pair(key, null, null, job.index, 
+									KVSOp.LOOKUP, KVSPurpose.JOB_CTRL_NODELIST);
 				kvsClientInteract(pair);
 			}
 			else	// if this is the last controller, then can launch the job
@@ -939,85 +1551,105 @@ public class PeerProtocol implements EDProtocol
 	}
 	
 	public void callbackSuc(KVSReturnObj kvsRetObj)
+	{
+		Job job = ctx.jobTable.get(kvsRetObj.identifier);
+		job.kvsKeys.add(kvsRetObj.key);	// inserted by the controller that released
+		finishJob(job);
+	}
+	
+	/* the result of the job is back at its client, no message refers to 
+	 * the job any more, so its record is written out and the job dropped */
+	public void finishJob(Job job)
 	{
 		numJobsFin++;
-		System.out.println("Number of jobs finished is:" + numJobsFin);
-		Library.numJobFinished++;
-		Job job = Library.jobMetaData.get(kvsRetObj.identifier);
-		job.backTime = ctrlMaxFwdTime;
+		ctx.numJobFinished++;
+		ctx.jobTable.backTime[job.index] = ctrlMaxFwdTime;
+		ctx.outputJobDetail(job.index, job.jobId);
+		ctx.recordJobPhases(job);
+		removeJobKeys(job);
+		ctx.jobTable.remove(job.index);
 		printOutResult();
 	}
+	
+	/* the metadata of the job in the zht, so that the servers do not keep
+	 * an entry of every job ever run. This is housekeeping of the simulator 
+	 * and not part of the protocol, so it sends no message and takes no time
+	 */
+	public void removeJobKeys(Job job)
+	{
+		for (Object key : job.kvsKeys)
+		{
+			PeerProtocol pp = (PeerProtocol)Network.get(hashServer(key)).getProtocol(par.pid);
+			pp.hmData.remove(key);
+			pp.hmVersion.remove(key);
+			pp.callbackHM.remove(key);
+		}
+		job.kvsKeys.clear();
+	}
 
 	public void processEvent(Node node, int pid, Object event)
 	{
 		Message msg = (Message)event;
+		ctx.numEvents++;
 		boolean increment = false;
-		if (!msg.msgType.equals("reallocation") &&
-			!msg.msgType.equals("retry") &&
-		    !msg.msgType.equals("execute job"))
+		switch (msg.msgType)
 		{
-			if (msg.msgType.equals("kvs"))
-			{
-				Pair pair = (Pair)msg.content;
-				if (!pair.forWhat.equals("recheck callback"))
-				{
-					increment = true;
-				}
-			}
-			else
-			{
+			case MsgType.REALLOCATION:
+			case MsgType.RETRY:
+			case MsgType.EXECUTE_JOB:
+			case MsgType.RUN:
+				break;
+			case MsgType.KVS:
+				increment = ((Pair)msg.content).forWhat != KVSPurpose.RECHECK_CALLBACK;
+				break;
+			default:
 				increment = true;
-			}
+				break;
 		}
 		if (increment)
 		{
 			msgCount++;
-			Library.numAllMsg++;
-		}
-		if (msg.msgType.equals("registration"))
-		{
-			procRegistEvent(msg);
-		}
-		else if (msg.msgType.equals("kvs"))
-		{
-			procKVSEvent(msg);
-		}
-		else if (msg.msgType.equals("kvs return"))
-		{
-			procKVSRetEvent(msg);
-		}
-		else if (msg.msgType.equals("retry"))
-		{
-			randSelect((String)msg.content);
-		}
-		else if (msg.msgType.equals("reallocation"))
-		{
-			executeJob((String)msg.content);
-		}
-		else if (msg.msgType.equals("transmit job"))
-		{
-			transmitJobMsgProc(msg);
-		}
-		else if (msg.msgType.equals("transmit job ack"))
-		{
-			transmitJobAckMsgProc(msg);
-		}
-		else if (msg.msgType.equals("execute job"))
-		{
-			execJobMsgProc(msg);
-		}
-		else if (msg.msgType.equals("one job finish"))
-		{
-			oneJobFinMsgProc(msg);
+			ctx.numAllMsg++;
 		}
-		else if (msg.msgType.equals("job done"))
-		{
-			jobDoneMsgProc(msg);
-		}
-		else
+		switch (msg.msgType)
 		{
-			System.out.println("Unknown message type:" + 
-							   msg.msgType + ", please check!");
+			case MsgType.REGISTRATION:
+				procRegistEvent(msg);
+				break;
+			case MsgType.KVS:
+				procKVSEvent(msg);
+				break;
+			case MsgType.KVS_RETURN:
+				procKVSRetEvent(msg);
+				break;
+			case MsgType.RETRY:
+				randSelect((Integer)msg.content);
+				break;
+			case MsgType.REALLOCATION:
+				executeJob((Integer)msg.content);
+				break;
+			case MsgType.TRANSMIT_JOB:
+				transmitJobMsgProc(msg);
+				break;
+			case MsgType.TRANSMIT_JOB_ACK:
+				transmitJobAckMsgProc(msg);
+				break;
+			case MsgType.EXECUTE_JOB:
+				execJobMsgProc(msg);
+				break;
+			case MsgType.ONE_JOB_FINISH:
+				oneJobFinMsgProc(msg);
+				break;
+			case MsgType.JOB_DONE:
+				jobDoneMsgProc(msg);
+				break;
+			case MsgType.RUN:
+				((Runnable)msg.content).run();
+				break;
+			default:
+				System.out.println("Unknown message type:" + 
+								   MsgType.name(msg.msgType) + ", please check!");
+				break;
 		}
 	}
 	
@@ -1,41 +1,182 @@
-import java.util.LinkedList;
 import java.io.Serializable;
 
+/* The available nodes of a controller, kept as a bitset over the node ids.
+ * Only the words between the lowest and the highest node are stored, so the
+ * resource of a partition takes partSize / 64 words. Split and merge work a
+ * word at a time, and every operation keeps a hash of the node set up to
+ * date, so that comparing two resources takes constant time.
+ */
 public class Resource implements Serializable
 {
+	private static final long[] EMPTY = new long[0];
+
 	int numAvailNode;
-	LinkedList<String> nodeLL;
-	
+	int base;	// the index of the first word
+	long[] words;
+	long hash;
+
 	public Resource()
 	{
 		numAvailNode = 0;
-		nodeLL = new LinkedList<String>();
+		base = 0;
+		words = EMPTY;
+		hash = 0;
 	}
-	
+
 	public int comResource(Resource dest)
 	{
 		if (this == null || dest == null)
 		{
 			return 1;
 		}
-		else if (numAvailNode != dest.numAvailNode) 
+		else if (numAvailNode != dest.numAvailNode)
 		{
 			return 1;
 		}
-		else if (nodeLL == null || dest.nodeLL == null)
+		else if (hash != dest.hash)
 		{
 			return 1;
 		}
 		else
 		{
-			for (int i = 0; i < numAvailNode; i++)
+			return 0;
+		}
+	}
+
+	public void add(int node)
+	{
+		int index = node >>> 6;
+		extend(index, index + 1);
+		int i = index - base;
+		long word = words[i] | (1L << node);
+		if (word != words[i])
+		{
+			hash += mix(index, word) - mix(index, words[i]);
+			words[i] = word;
+			numAvailNode++;
+		}
+	}
+
+	/* also drops the span, so a reused resource does not keep the words of 
+	 * what it held before */
+	public void clear()
+	{
+		numAvailNode = 0;
+		base = 0;
+		words = EMPTY;
+		hash = 0;
+	}
+
+	/* the first num nodes (in the order of node ids) go to firstRes,
+	 * the others go to lastRes */
+	public void split(Resource firstRes, Resource lastRes, int num)
+	{
+		firstRes.clear();
+		lastRes.clear();
+		if (words.length == 0)
+		{
+			return;
+		}
+		firstRes.extend(base, base + words.length);
+		lastRes.extend(base, base + words.length);
+		assert firstRes.base == base && firstRes.words.length == words.length &&
+			lastRes.base == base && lastRes.words.length == words.length : 
+			"split must give both parts the span of the source";
+		int left = num;
+		for (int i = 0; i < words.length; i++)
+		{
+			long word = words[i];
+			long first = 0;
+			if (left > 0)
 			{
-				if (!(nodeLL.get(i).equals(dest.nodeLL.get(i))))
+				int count = Long.bitCount(word);
+				if (count <= left)
 				{
-					return 1;
+					first = word;
+					left -= count;
+				}
+				else
+				{
+					long rest = word;
+					for (; left > 0; left--)
+					{
+						first |= Long.lowestOneBit(rest);
+						rest &= rest - 1;
+					}
 				}
 			}
+			firstRes.setWord(base + i, first);
+			lastRes.setWord(base + i, word & ~first);
+		}
+	}
+
+	public void merge(Resource res)
+	{
+		if (res.words.length == 0)
+		{
+			return;
+		}
+		extend(res.base, res.base + res.words.length);
+		for (int i = 0; i < res.words.length; i++)
+		{
+			int index = res.base + i;
+			setWord(index, words[index - base] | res.words[i]);
+		}
+	}
+
+	/* append the nodes to the list in the order of node ids */
+	public void addTo(IntList list)
+	{
+		for (int i = 0; i < words.length; i++)
+		{
+			long word = words[i];
+			while (word != 0)
+			{
+				list.add(((base + i) << 6) + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+	}
+
+	private void setWord(int index, long word)
+	{
+		int i = index - base;
+		numAvailNode += Long.bitCount(word) - Long.bitCount(words[i]);
+		hash += mix(index, word) - mix(index, words[i]);
+		words[i] = word;
+	}
+
+	/* make sure the words [from, to) are stored */
+	private void extend(int from, int to)
+	{
+		if (words.length == 0)
+		{
+			base = from;
+			words = new long[to - from];
+			return;
+		}
+		int newBase = Math.min(base, from);
+		int newEnd = Math.max(base + words.length, to);
+		if (newBase == base && newEnd == base + words.length)
+		{
+			return;
+		}
+		long[] newWords = new long[newEnd - newBase];
+		System.arraycopy(words, 0, newWords, base - newBase, words.length);
+		base = newBase;
+		words = newWords;
+	}
+
+	/* the hash of the set is the sum of the hashes of its non-empty words */
+	private static long mix(int index, long word)
+	{
+		if (word == 0)
+		{
 			return 0;
 		}
+		long z = word * 0x9E3779B97F4A7C15L + index;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 }
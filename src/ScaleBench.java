@@ -0,0 +1,258 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import peersim.config.Configuration;
+import peersim.core.Network;
+
+/* Measures the simulator itself over a grid of controller counts and
+ * partition sizes: wall time, events per second, allocation rate, gc time
+ * and peak heap. Every point gets its workload and configuration generated 
+ * as in script/genWorkload.sh and script/genConfig.sh, and is simulated in 
+ * a JVM of its own, so that the heap figures are its own. The report is 
+ * tab separated, one line per point, and when a baseline report is given 
+ * every point is compared against the same point of the baseline. The
+ * lines of the file given by -Dscalebench.config are added to the 
+ * configuration of every point, e.g. to turn on an option of the protocol.
+ * usage: java ScaleBench waitTimeFile nJobsPerCtrl nCtrl,nCtrl,... 
+ *        partSize,partSize,... reportFile [baselineFile]
+ */
+public class ScaleBench
+{
+	private static final String RESULT = "ScaleBench\t";
+	private static final String HEADER = "nCtrl\tpartSize\tnJobsPerCtrl\t" +
+			"wallMs\tevents\teventsPerSec\tallocMBPerSec\tgcMs\tmaxHeapMB\tjobsPerSec";
+	private static final int WALL = 3;
+	private static final int EVENTS_PER_SEC = 5;
+	private static final int ALLOC = 6;
+	private static final int MAX_HEAP = 8;
+	private static final int JOBS_PER_SEC = 9;
+
+	/* runs in the child JVM: simulate, then print the measures */
+	public static void runPoint(String configFile) throws Exception
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocStart = allocatedBytes(threads, threadId);
+		long start = System.nanoTime();
+		peersim.Simulator.main(new String[] {configFile});
+		long wallNs = System.nanoTime() - start;
+		long alloc = allocatedBytes(threads, threadId) - allocStart;
+
+		int pid = Configuration.lookupPid("peer");
+		SimContext ctx = ((PeerProtocol)Network.get(0).getProtocol(pid)).ctx;
+		long gcMs = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			gcMs += gc.getCollectionTime();
+		}
+		/* the peaks of the pools, e.g. a full eden next to the old generation */
+		long maxHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+			{
+				maxHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+		double wallSec = wallNs / 1E9;
+		System.out.println(RESULT + wallNs / 1000000 + "\t" + ctx.numEvents + "\t" +
+				(long)(ctx.numEvents / wallSec) + "\t" +
+				(alloc < 0 ? -1 : (long)(alloc / wallSec / 1048576)) + "\t" + gcMs + "\t" +
+				maxHeap / 1048576 + "\t" + String.format("%.3f", ctx.throughput));
+	}
+
+	private static long allocatedBytes(ThreadMXBean threads, long threadId)
+	{
+		if (threads instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(threadId);
+		}
+		return -1;
+	}
+
+	/* the same workload as script/genWorkload.sh, from a fixed seed */
+	public static void genWorkload(String file, int nCtrl, int pSize, int nJobPerCtrl)
+			throws IOException
+	{
+		Random rand = new Random(nCtrl * 31L + pSize);
+		int nNode = nCtrl * pSize;
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		for (int i = 0; i < nCtrl * nJobPerCtrl; i++)
+		{
+			int num = rand.nextInt(32768) % nNode / 2 + 1;
+			bw.write("srun -N" + num + " /bin/ sleep 0\n");
+		}
+		bw.close();
+	}
+
+	public static String[] benchPoint(int nCtrl, int pSize, int nJobPerCtrl, 
+			String waitTimeFile, File dir) throws Exception
+	{
+		String wFile = new File(dir, "workload." + nCtrl + "." + pSize + "." + 
+				nJobPerCtrl).getPath();
+		genWorkload(wFile, nCtrl, pSize, nJobPerCtrl);
+		String config = Sweep.genConfig(nCtrl, pSize, nJobPerCtrl, wFile, waitTimeFile);
+		String extra = System.getProperty("scalebench.config");
+		if (extra != null)
+		{
+			config += "\n" + readFile(extra);
+		}
+		File configFile = new File(dir, "config_" + nCtrl + "_" + pSize + "_" + nJobPerCtrl);
+		BufferedWriter bw = new BufferedWriter(new FileWriter(configFile));
+		bw.write(config);
+		bw.close();
+
+		ArrayList<String> cmd = new ArrayList<String>();
+		cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		cmd.add("-Xmx" + System.getProperty("scalebench.xmx", "4000m"));
+		cmd.add("-cp");
+		cmd.add(absoluteClassPath());
+		cmd.add("ScaleBench");
+		cmd.add("-run");
+		cmd.add(configFile.getPath());
+		ProcessBuilder pb = new ProcessBuilder(cmd);
+		pb.directory(dir);	// the results go to dir/output
+		pb.redirectErrorStream(true);
+		Process proc = pb.start();
+		BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+		String result = null;
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			if (line.startsWith(RESULT))
+			{
+				result = line.substring(RESULT.length());
+			}
+		}
+		if (proc.waitFor() != 0 || result == null)
+		{
+			throw new RuntimeException("The run of " + configFile + " failed");
+		}
+		return (nCtrl + "\t" + pSize + "\t" + nJobPerCtrl + "\t" + result).split("\t");
+	}
+
+	private static String readFile(String file) throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			text.append(line).append("\n");
+		}
+		br.close();
+		return text.toString();
+	}
+
+	/* the child runs in another directory */
+	private static String absoluteClassPath()
+	{
+		String[] paths = System.getProperty("java.class.path").split(File.pathSeparator);
+		StringBuilder cp = new StringBuilder();
+		for (int i = 0; i < paths.length; i++)
+		{
+			cp.append(i == 0 ? "" : File.pathSeparator).append(new File(paths[i]).getAbsolutePath());
+		}
+		return cp.toString();
+	}
+
+	public static HashMap<String, String[]> readReport(String file) throws IOException
+	{
+		HashMap<String, String[]> report = new HashMap<String, String[]>();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		String line = br.readLine();	// the header
+		while ((line = br.readLine()) != null)
+		{
+			String[] fields = line.split("\t");
+			report.put(key(fields), fields);
+		}
+		br.close();
+		return report;
+	}
+
+	private static String key(String[] fields)
+	{
+		return fields[0] + "_" + fields[1] + "_" + fields[2];
+	}
+
+	/* new / baseline, e.g. 0.5 for a wall time halved */
+	private static String ratio(String[] fields, String[] base, int i)
+	{
+		if (i >= base.length)	// a baseline from before the column
+		{
+			return "-";
+		}
+		double b = Double.parseDouble(base[i]);
+		return b <= 0 ? "-" : String.format("%.3f", Double.parseDouble(fields[i]) / b);
+	}
+
+	private static int[] parseList(String list)
+	{
+		String[] items = list.split(",");
+		int[] values = new int[items.length];
+		for (int i = 0; i < items.length; i++)
+		{
+			values[i] = Integer.parseInt(items[i]);
+		}
+		return values;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length == 2 && args[0].equals("-run"))
+		{
+			runPoint(args[1]);
+			return;
+		}
+		if (args.length < 5)
+		{
+			System.out.println("usage: java ScaleBench waitTimeFile nJobsPerCtrl " +
+					"nCtrl,nCtrl,... partSize,partSize,... reportFile [baselineFile]");
+			return;
+		}
+		String waitTimeFile = new File(args[0]).getAbsolutePath();
+		int nJobPerCtrl = Integer.parseInt(args[1]);
+		int[] nCtrls = parseList(args[2]);
+		int[] pSizes = parseList(args[3]);
+		HashMap<String, String[]> baseline = null;
+		if (args.length > 5)
+		{
+			baseline = readReport(args[5]);
+		}
+
+		File dir = File.createTempFile("scalebench", "");
+		dir.delete();
+		dir.mkdirs();
+		new File(dir, "output").mkdirs();
+		BufferedWriter bw = new BufferedWriter(new FileWriter(args[4]));
+		bw.write(HEADER + (baseline == null ? "" : 
+				"\twallVsBase\teventsPerSecVsBase\tallocVsBase\tmaxHeapVsBase\tjobsPerSecVsBase") + "\n");
+		for (int i = 0; i < nCtrls.length; i++)
+		{
+			for (int j = 0; j < pSizes.length; j++)
+			{
+				String[] fields = benchPoint(nCtrls[i], pSizes[j], nJobPerCtrl, 
+						waitTimeFile, dir);
+				StringBuilder line = new StringBuilder();
+				for (int k = 0; k < fields.length; k++)
+				{
+					line.append(k == 0 ? "" : "\t").append(fields[k]);
+				}
+				if (baseline != null)
+				{
+					String[] base = baseline.get(key(fields));
+					for (int k : new int[] {WALL, EVENTS_PER_SEC, ALLOC, MAX_HEAP, JOBS_PER_SEC})
+					{
+						line.append("\t").append(base == null ? "-" : ratio(fields, base, k));
+					}
+				}
+				System.out.println(line);
+				bw.write(line + "\n");
+				bw.flush();
+			}
+		}
+		bw.close();
+		System.out.println("The workloads, configurations and outputs are in:" + dir);
+	}
+}
@@ -0,0 +1,238 @@
+import java.io.*;
+import java.util.*;
+
+/* The state of one simulation run: the network parameters, the counters, the
+ * workload, the job table and the output files. NetInit creates it and hands 
+ * it to the protocol of every node, so nothing of a run is kept in statics 
+ * and several runs can live in the same JVM.
+ */
+public class SimContext 
+{
+	public long netSpeed;
+	public long latency;
+	public long sendOverhead;
+	public long recvOverhead;
+	public long jobProcTime;
+	public long kvsProcTime;
+	
+	public int preNoJobFinished;
+	public int numJobFinished;
+	public int numAllJobs;
+	public int numJobsPerCtrl;
+	public double throughput;	// jobs per second of the run, once all are done
+	public long numAllMsg;
+	public long numEvents;	// all events processed by the protocol
+	public long numInsertMsg;
+	public long numLookupMsg;
+	public long numCswapMsg;
+	public long numCallbackMsg;
+	public long numAllocLookup;	// resource lookups to allocate nodes
+	public long numAllocCswap;	// compare and swaps to allocate nodes
+	public long numAllocEmpty;	// resource lookups that found no free node
+	public long numResCacheHit;	// resource lookups answered from the cache
+	
+	public int[] memList;
+	public String[] nodeNames;
+	public HashRing ring;	// null places a key on memList[hash % numServers]
+	public WorkloadSource workload;
+	
+	public JobTable jobTable;
+	
+	public MsgSizeEstimator msgSizeEstimator;
+	public LaunchTree launchTree;
+	
+	public LatencyHistogram[] phaseLatency = newHistograms(JobPhase.NUM);
+	public LatencyHistogram[] kvsOpLatency = newHistograms(KVSOp.NUM);
+	/* the number of jobs, and the sum and max of their launch latency 
+	 * (the transmit phase), by the number of nodes of the job */
+	public TreeMap<Integer, long[]> launchLatency = new TreeMap<Integer, long[]>();
+	
+	public String outputSuffix;	// numCtrls_partSize_numJobsPerCtrl
+	public BufferedWriter bwThroughput;
+	public BufferedWriter bwTaskDetail;
+	public Thread taskDetailHook;	// flushes bwTaskDetail if the run ends early
+	public BufferedWriter bwStatInfo;
+	
+	private static LatencyHistogram[] newHistograms(int num)
+	{
+		LatencyHistogram[] hists = new LatencyHistogram[num];
+		for (int i = 0; i < num; i++)
+		{
+			hists[i] = new LatencyHistogram();
+		}
+		return hists;
+	}
+	
+	/* the name of a node, only used to build zht keys and output */
+	public String nodeName(int id)
+	{
+		return nodeNames[id];
+	}
+	
+	public long getCommOverhead(int msgSize)
+	{
+		return msgSize * 8L * 1000000L / netSpeed + latency;
+	}
+	
+	public void outputTaskDetailHeader() throws IOException
+	{
+		bwTaskDetail.write("JobId\tStartTime\tSubmissionTime\t" +
+			"ExecuteTime\tFinishTime\tResultBackTime\r\n");
+	}
+	
+	/* written when the job is done, so the lines are in the order of 
+	 * completion */
+	public void outputJobDetail(int index, String jobId)
+	{
+		try
+		{
+			bwTaskDetail.write(jobId + "\t" + jobTable.startTime[index] + "\t" + 
+					jobTable.submitTime[index] + "\t" + jobTable.exeTime[index] + "\t" + 
+					jobTable.finTime[index] + "\t" + jobTable.backTime[index] + "\r\n");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/* called when the result of the job is back at its client */
+	public void recordJobPhases(Job job)
+	{
+		int i = job.index;
+		phaseLatency[JobPhase.ALLOCATE].record(jobTable.allocTime[i] - jobTable.startTime[i]);
+		phaseLatency[JobPhase.METADATA].record(jobTable.submitTime[i] - jobTable.allocTime[i]);
+		phaseLatency[JobPhase.TRANSMIT].record(jobTable.exeTime[i] - jobTable.submitTime[i]);
+		recordLaunch(job.numNodeRequired, jobTable.exeTime[i] - jobTable.submitTime[i]);
+		phaseLatency[JobPhase.EXECUTE].record(jobTable.finTime[i] - jobTable.exeTime[i]);
+		phaseLatency[JobPhase.RELEASE].record(jobTable.backTime[i] - jobTable.finTime[i]);
+		phaseLatency[JobPhase.CSWAP_RETRY].record(job.cswapRetryTime);
+	}
+	
+	public void outputLatency()
+	{
+		try
+		{
+			BufferedWriter bw = new BufferedWriter(new FileWriter("output/latency_" + 
+					outputSuffix));
+			bw.write("Name\tCount\tMean\tP50\tP99\tP999\tMax\r\n");
+			for (int i = 0; i < JobPhase.NUM; i++)
+			{
+				outputLatency(bw, "phase " + JobPhase.name(i), phaseLatency[i]);
+			}
+			for (int i = 0; i < KVSOp.NUM; i++)
+			{
+				outputLatency(bw, "zht " + KVSOp.name(i), kvsOpLatency[i]);
+			}
+			bw.flush();
+			bw.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	private void outputLatency(BufferedWriter bw, String name, LatencyHistogram hist) 
+			throws IOException
+	{
+		bw.write(name + "\t" + hist.count() + "\t" + hist.mean() + "\t" + 
+				hist.percentile(0.5) + "\t" + hist.percentile(0.99) + "\t" + 
+				hist.percentile(0.999) + "\t" + hist.max() + "\r\n");
+	}
+	
+	public void recordLaunch(int numNodes, long latency)
+	{
+		long[] stat = launchLatency.get(numNodes);
+		if (stat == null)
+		{
+			stat = new long[3];
+			launchLatency.put(numNodes, stat);
+		}
+		stat[0]++;
+		stat[1] += latency;
+		stat[2] = Math.max(stat[2], latency);
+	}
+	
+	/* one line for each job size, to draw launch latency against the 
+	 * number of nodes for a fan-out */
+	public void outputLaunchLatency()
+	{
+		try
+		{
+			BufferedWriter bw = new BufferedWriter(new FileWriter("output/launch_" + 
+					outputSuffix));
+			bw.write("Nodes\tFanOut\tModel\tJobs\tMean\tMax\r\n");
+			for (Map.Entry<Integer, long[]> entry : launchLatency.entrySet())
+			{
+				int numNodes = entry.getKey();
+				int fanOut = launchTree.fanOut(numNodes);
+				long[] stat = entry.getValue();
+				bw.write(numNodes + "\t" + fanOut + "\t" + 
+						launchTree.launchTime(numNodes, fanOut) + "\t" + stat[0] + "\t" + 
+						(double)stat[1] / (double)stat[0] + "\t" + stat[2] + "\r\n");
+			}
+			bw.flush();
+			bw.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/* the keys placed on, the keys still held at the end by and the operations
+	 * served by each zht server, and how far the busiest server is above the
+	 * mean, to show the hot spots. The keys of a finished job are dropped, so
+	 * the spread of the keys is shown by the keys placed */
+	public void outputServerLoad(long[] numKeys, int[] numHeld, long[] numOps)
+	{
+		try
+		{
+			BufferedWriter bw = new BufferedWriter(new FileWriter("output/kvsload_" + 
+					outputSuffix));
+			bw.write("Server\tKeys\tHeld\tOps\r\n");
+			long sumKeys = 0, sumOps = 0, maxKeys = 0, maxOps = 0;
+			for (int i = 0; i < memList.length; i++)
+			{
+				bw.write(nodeName(memList[i]) + "\t" + numKeys[i] + "\t" + numHeld[i] + "\t" + 
+						numOps[i] + "\r\n");
+				sumKeys += numKeys[i];
+				sumOps += numOps[i];
+				maxKeys = Math.max(maxKeys, numKeys[i]);
+				maxOps = Math.max(maxOps, numOps[i]);
+			}
+			bw.write("The virtual nodes per server are:" + 
+					(ring == null ? 0 : ring.numVirtual()) + "\r\n");
+			bw.write("The max/mean keys per server is:" + 
+					(double)maxKeys * memList.length / (double)sumKeys + "\r\n");
+			bw.write("The max/mean operations per server is:" + 
+					(double)maxOps * memList.length / (double)sumOps + "\r\n");
+			bw.flush();
+			bw.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/* the hook goes too, or they would pile up over the runs of a Sweep */
+	public void closeTaskDetail()
+	{
+		try
+		{
+			bwTaskDetail.flush();
+			bwTaskDetail.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		if (taskDetailHook != null)
+		{
+			Runtime.getRuntime().removeShutdownHook(taskDetailHook);
+			taskDetailHook = null;
+		}
+	}
+}
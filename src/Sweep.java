@@ -0,0 +1,188 @@
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* Runs a parameter sweep in one JVM, several configurations at a time.
+ * Every point (nCtrl,partSize,nJobsPerCtrl) gets a configuration file like
+ * the one of script/genConfig.sh. PeerSim keeps its network, event queue and
+ * configuration in statics, so each run loads PeerSim and the simulator 
+ * classes in its own class loader. The run does not go through 
+ * peersim.Simulator.main, which calls System.exit on a configuration error: 
+ * it sets the configuration and starts EDSimulator itself, so that an error
+ * only fails its own point. What a run prints goes to 
+ * output/log_nCtrl_partSize_nJobsPerCtrl.
+ * usage: java Sweep workloadBase waitTimeBase numThreads nCtrl,partSize,nJobsPerCtrl ...
+ */
+public class Sweep
+{
+	public static String genConfig(int nCtrl, int pSize, int nJobPerCtrl,
+			String wFile, String wTFile)
+	{
+		int nNode = nCtrl * pSize;
+		return "simulation.endtime 10^15\nsimulation.logtime 10^15\n" +
+			"simulation.experiments 1\n\nnetwork.size " + nNode + "\n\n" +
+			"protocol.tr UniformRandomTransport\n{\n\tmindelay 7912\n\tmaxdelay 7912\n}\n\n" +
+			"protocol.peer PeerProtocol\n{\n\ttransport tr\n\tpartSize " + pSize +
+			"\n\tsleepLength 1000\n\tcallbackInterval 1000\n\tcallbackNumTry 3\n" +
+			"\tmaxNumTry 5\n}\n\ninit.create NetInit\n{\n\tprotocol peer\n\tpartSize " + pSize +
+			"\n\tnetSpeed 1000000000\n\tlatency 100\n\tsendOverhead 50\n\trecvOverhead 50\n" +
+			"\tjobProcTime 1000\n\tkvsProcTime 1000\n\tworkloadFile " + wFile + "\n}\n\n" +
+			"control.start TrafficGene\n{\n\tprotocol peer\n\twaitTimeFile " + wTFile +
+			"\n\tstep simulation.endtime\n}\n";
+	}
+
+	/* stdout and stderr, sent to the log of the run of the thread that 
+	 * writes, or else to where they went before */
+	static class RunOutput extends OutputStream
+	{
+		static final ThreadLocal<OutputStream> log = new ThreadLocal<OutputStream>();
+		private OutputStream out;
+
+		RunOutput(OutputStream out)
+		{
+			this.out = out;
+		}
+
+		private OutputStream target()
+		{
+			OutputStream runLog = log.get();
+			return runLog == null ? out : runLog;
+		}
+
+		public void write(int b) throws IOException
+		{
+			target().write(b);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			target().write(b, off, len);
+		}
+
+		public void flush() throws IOException
+		{
+			target().flush();
+		}
+	}
+
+	/* a class loader over the class path of this JVM, which does not
+	 * delegate to the application class loader */
+	public static URLClassLoader isolatedLoader() throws IOException
+	{
+		String[] paths = System.getProperty("java.class.path").split(File.pathSeparator);
+		URL[] urls = new URL[paths.length];
+		for (int i = 0; i < paths.length; i++)
+		{
+			urls[i] = new File(paths[i]).toURI().toURL();
+		}
+		return new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+	}
+
+	/* what peersim.Simulator.main does for an event driven configuration of
+	 * one experiment, with the errors thrown instead of exiting */
+	public static void runSimulation(String configFile, String logFile) throws Exception
+	{
+		OutputStream runLog = new BufferedOutputStream(new FileOutputStream(logFile));
+		RunOutput.log.set(runLog);
+		Thread thread = Thread.currentThread();
+		ClassLoader old = thread.getContextClassLoader();
+		try (URLClassLoader loader = isolatedLoader())
+		{
+			thread.setContextClassLoader(loader);
+			Object props = loader.loadClass("peersim.config.ParsedProperties")
+					.getConstructor(String[].class).newInstance((Object)new String[] {configFile});
+			loader.loadClass("peersim.config.Configuration")
+					.getMethod("setConfig", Properties.class).invoke(null, props);
+			loader.loadClass("peersim.edsim.EDSimulator").getMethod("nextExperiment")
+					.invoke(null);
+		}
+		catch (InvocationTargetException e)
+		{
+			if (e.getCause() instanceof Exception)
+			{
+				throw (Exception)e.getCause();
+			}
+			if (e.getCause() instanceof Error)
+			{
+				throw (Error)e.getCause();
+			}
+			throw e;
+		}
+		finally
+		{
+			thread.setContextClassLoader(old);
+			RunOutput.log.remove();
+			runLog.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 4)
+		{
+			System.out.println("usage: java Sweep workloadBase waitTimeBase " +
+					"numThreads nCtrl,partSize,nJobsPerCtrl ...");
+			return;
+		}
+		String wBase = args[0];
+		String wtBase = args[1];
+		int numThreads = Integer.parseInt(args[2]);
+		new File("output").mkdirs();
+		System.setOut(new PrintStream(new RunOutput(System.out), true));
+		System.setErr(new PrintStream(new RunOutput(System.err), true));
+
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		LinkedList<Future<Long>> results = new LinkedList<Future<Long>>();
+		LinkedList<String> points = new LinkedList<String>();
+		for (int i = 3; i < args.length; i++)
+		{
+			String[] point = args[i].split(",");
+			int nCtrl = Integer.parseInt(point[0]);
+			int pSize = Integer.parseInt(point[1]);
+			int nJobPerCtrl = Integer.parseInt(point[2]);
+			String suffix = nCtrl + "_" + pSize + "_" + nJobPerCtrl;
+			final String configFile = "output/config_" + suffix;
+			final String logFile = "output/log_" + suffix;
+			BufferedWriter bw = new BufferedWriter(new FileWriter(configFile));
+			bw.write(genConfig(nCtrl, pSize, nJobPerCtrl, wBase + "workload." + nCtrl + 
+					"." + pSize + "." + nJobPerCtrl, wtBase + "waittime"));
+			bw.close();
+			points.add(args[i]);
+			results.add(pool.submit(new Callable<Long>()
+			{
+				public Long call() throws Exception
+				{
+					long start = System.currentTimeMillis();
+					runSimulation(configFile, logFile);
+					return System.currentTimeMillis() - start;
+				}
+			}));
+		}
+		pool.shutdown();
+
+		int numFailed = 0;
+		Iterator<String> it = points.iterator();
+		for (Future<Long> result : results)
+		{
+			String point = it.next();
+			try
+			{
+				System.out.println("The run of " + point + " took:" + result.get() + " ms");
+			}
+			catch (ExecutionException e)
+			{
+				numFailed++;
+				System.out.println("The run of " + point + " failed:" + e.getCause() + 
+						", see output/log_" + point.replace(',', '_'));
+				e.getCause().printStackTrace();
+			}
+		}
+		if (numFailed > 0)
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* Reads a text workload with one job per line, e.g. "srun -N4 /bin/ sleep 0".
+ * The file is memory mapped and only the offset of each line is kept on the
+ * heap, a line is parsed when its job is asked for.
+ */
+public class TextWorkloadSource implements WorkloadSource
+{
+	private MappedByteBuffer buf;
+	private int fileLen;
+	private IntList lineStart;
+
+	public TextWorkloadSource(String file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel fc = raf.getChannel();
+			if (fc.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("The workload file is too large:" + file);
+			}
+			fileLen = (int)fc.size();
+			buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fileLen);
+		}
+		finally
+		{
+			raf.close();
+		}
+		lineStart = new IntList(fileLen / 16);
+		int start = 0;
+		for (int i = 0; i < fileLen; i++)
+		{
+			if (buf.get(i) == '\n')
+			{
+				lineStart.add(start);
+				start = i + 1;
+			}
+		}
+		if (start < fileLen)
+		{
+			lineStart.add(start);
+		}
+	}
+
+	public int numJobs()
+	{
+		return lineStart.size();
+	}
+
+	/* the fields are separated by single spaces, the ones after the
+	 * command make up the arguments */
+	public JobDesc getJob(int index)
+	{
+		int start = lineStart.get(index);
+		int end = start;
+		while (end < fileLen && buf.get(end) != '\n')
+		{
+			end++;
+		}
+		if (end > start && buf.get(end - 1) == '\r')
+		{
+			end--;
+		}
+		while (end > start && buf.get(end - 1) == ' ')
+		{
+			end--;
+		}
+		JobDesc desc = new JobDesc();
+		int pos = start;
+		int next = nextSpace(pos, end);
+		desc.prefix = string(pos, next);
+		pos = next + 1;
+		next = nextSpace(pos, end);
+		desc.numNodeRequired = parseInt(pos + 2, next);	// skip the "-N"
+		desc.numCoresRequiredPerNode = -1;
+		pos = next + 1;
+		next = nextSpace(pos, end);
+		desc.dir = string(pos, next);
+		pos = next + 1;
+		next = nextSpace(pos, end);
+		desc.cmd = string(pos, next);
+		desc.argv = string(next + 1, end);
+		desc.duration = (long)(Double.parseDouble(desc.argv) * 1000000);
+		return desc;
+	}
+
+	private int nextSpace(int pos, int end)
+	{
+		while (pos < end && buf.get(pos) != ' ')
+		{
+			pos++;
+		}
+		return pos;
+	}
+
+	private String string(int from, int to)
+	{
+		if (to <= from)
+		{
+			return "";
+		}
+		char[] chars = new char[to - from];
+		for (int i = from; i < to; i++)
+		{
+			chars[i - from] = (char)(buf.get(i) & 0xff);
+		}
+		return new String(chars);
+	}
+
+	private int parseInt(int from, int to)
+	{
+		if (to <= from)
+		{
+			throw new NumberFormatException("Missing the number of nodes");
+		}
+		int value = 0;
+		for (int i = from; i < to; i++)
+		{
+			int digit = buf.get(i) - '0';
+			if (digit < 0 || digit > 9)
+			{
+				throw new NumberFormatException("Bad number of nodes:" + string(from, to));
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+}
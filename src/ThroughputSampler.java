@@ -0,0 +1,95 @@
+import java.io.*;
+
+import peersim.core.*;
+import peersim.config.Configuration;
+
+/* Writes one line of a time series every step of simulated time: the jobs
+ * finished and in flight, the zht messages of each type so far, and the
+ * throughput of the last interval, overall and for each controller.
+ * The simulation is stopped once every job is done, since the sampler
+ * would otherwise keep it going until simulation.endtime.
+ */
+public class ThroughputSampler implements Control
+{
+	private static final String PAR_PROT = "protocol";
+
+	private final int pid;
+
+	private SimContext ctx;
+	private BufferedWriter bw;
+	private int[] preNumJobsFin;
+	private long preTime;
+
+	public ThroughputSampler(String prefix)
+	{
+		pid = Configuration.getPid(prefix + "." + PAR_PROT);
+	}
+
+	public void open() throws IOException
+	{
+		ctx = ((PeerProtocol)Network.get(0).getProtocol(pid)).ctx;
+		bw = new BufferedWriter(new FileWriter("output/timeseries_" + ctx.outputSuffix));
+		bw.write("Time\tJobsFinished\tJobsInFlight\tInsertMsg\tLookupMsg\t" +
+				"CswapMsg\tCallbackMsg\tThroughput");
+		for (int i = 0; i < ctx.memList.length; i++)
+		{
+			bw.write("\t" + ctx.nodeName(ctx.memList[i]));
+		}
+		bw.write("\r\n");
+		preNumJobsFin = new int[ctx.memList.length];
+		ctx.preNoJobFinished = 0;
+		preTime = CommonState.getTime();
+	}
+
+	public void sample() throws IOException
+	{
+		long time = CommonState.getTime();
+		double interval = (double)(time - preTime) / 1E6;
+		int numJobsStart = 0;
+		StringBuilder ctrlThroughput = new StringBuilder();
+		for (int i = 0; i < ctx.memList.length; i++)
+		{
+			PeerProtocol pp = (PeerProtocol)Network.get(ctx.memList[i]).getProtocol(pid);
+			numJobsStart += pp.numJobsStart;
+			pp.throughput = interval > 0 ? (pp.numJobsFin - preNumJobsFin[i]) / interval : 0;
+			preNumJobsFin[i] = pp.numJobsFin;
+			ctrlThroughput.append("\t").append(pp.throughput);
+		}
+		double throughput = interval > 0 ?
+				(ctx.numJobFinished - ctx.preNoJobFinished) / interval : 0;
+		bw.write(time + "\t" + ctx.numJobFinished + "\t" +
+				(numJobsStart - ctx.numJobFinished) + "\t" + ctx.numInsertMsg + "\t" +
+				ctx.numLookupMsg + "\t" + ctx.numCswapMsg + "\t" + ctx.numCallbackMsg + "\t" +
+				throughput + ctrlThroughput + "\r\n");
+		bw.flush();	// samples are few, keep them if the run ends early
+		ctx.preNoJobFinished = ctx.numJobFinished;
+		preTime = time;
+	}
+
+	public boolean execute()
+	{
+		if (bw == null && ctx != null)	// already closed
+		{
+			return true;
+		}
+		try
+		{
+			if (bw == null)
+			{
+				open();
+			}
+			sample();
+			if (ctx.numJobFinished == ctx.numAllJobs)
+			{
+				bw.close();
+				bw = null;
+				return true;
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		return false;
+	}
+}
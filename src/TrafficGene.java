@@ -1,60 +1,150 @@
 import java.util.*;
 import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
 
 import peersim.core.*;
 import peersim.config.Configuration;
+import peersim.edsim.EDSimulator;
 
-public class TrafficGene implements Control
+/* Registers every node to its controller after the wait time of the node.
+ * The wait times are sorted as primitive keys (wait * numNode + id), and the
+ * registrations are scheduled registChunk nodes at a time: the next chunk is
+ * scheduled when the simulation reaches the wait time of its first node,
+ * by an event of node 0 that runs this control.
+ */
+public class TrafficGene implements Control, Runnable
 {
 	private static final String PAR_PROT = "protocol";
 	private static final String PAR_WAITTIMEFILE = "waitTimeFile";
-	
+	private static final String PAR_WAITTIMEFORMAT = "waitTimeFormat";
+	private static final String PAR_REGISTCHUNK = "registChunk";
+
 	private final int pid;
 	private final String waitTimeFile;
-	
+	private final String waitTimeFormat;
+	private final int registChunk;
+
+	private int numNode;
+	private long[] order;
+	private int next;
+
 	public TrafficGene(String prefix)
 	{
 		pid = Configuration.getPid(prefix + "." + PAR_PROT);
 		waitTimeFile = Configuration.getString(prefix + "." + PAR_WAITTIMEFILE);
+		waitTimeFormat = Configuration.getString(prefix + "." + PAR_WAITTIMEFORMAT, "text");
+		registChunk = Configuration.getInt(prefix + "." + PAR_REGISTCHUNK, 4096);
 	}
-	
+
+	/* read one wait time per node, from a text file with one number per
+	 * line, blank lines skipped, or from a binary file of longs */
+	public static long[] readWaitTime(String file, String format, int numNode)
+			throws IOException
+	{
+		long[] wait = new long[numNode];
+		if (format.equals("binary"))
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				FileChannel fc = raf.getChannel();
+				if (fc.size() < numNode * 8L)
+				{
+					throw new IOException("Not enough wait times in:" + file);
+				}
+				LongBuffer lb = fc.map(FileChannel.MapMode.READ_ONLY,
+									   0, numNode * 8L).asLongBuffer();
+				lb.get(wait);
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+		else
+		{
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			try
+			{
+				int i = 0;
+				while (i < numNode)
+				{
+					String line = br.readLine();
+					if (line == null)
+					{
+						throw new IOException("Not enough wait times in:" + file);
+					}
+					if (!line.trim().isEmpty())	// as WaitTimeConverter does
+					{
+						wait[i++] = Long.parseLong(line.trim());
+					}
+				}
+			}
+			finally
+			{
+				br.close();
+			}
+		}
+		return wait;
+	}
+
 	public boolean execute()
 	{
-		int numNode = Network.size();
-		BufferedReader br = null;
+		numNode = Network.size();
+		long[] wait;
 		try
 		{
-			br = new BufferedReader(new FileReader(waitTimeFile));
+			wait = readWaitTime(waitTimeFile, waitTimeFormat, numNode);
 		}
 		catch (IOException e)
 		{
-			e.printStackTrace();
+			throw new RuntimeException("Cannot read the wait time file:" + waitTimeFile, e);
 		}
-		TreeSet<Comparator> ts = new TreeSet<Comparator>();
-		try
+		long maxWait = (Long.MAX_VALUE - numNode) / numNode;
+		order = wait;
+		for (int i = 0; i < numNode; i++)
 		{
-			long wait = 0;
-			String line = null;
-			for (int i = 0; i < numNode; i++)
+			if (wait[i] < 0 || wait[i] > maxWait)
 			{
-				line = br.readLine();
-				wait = Long.parseLong(line);
-				Comparator comp = new Comparator(wait, i);
-				ts.add(comp);
+				throw new IllegalArgumentException("Bad wait time of node " + i + ":" + wait[i]);
 			}
+			order[i] = wait[i] * numNode + i;
 		}
-		catch (IOException e)
+		Arrays.sort(order);
+		next = 0;
+		registNext();
+		return false;
+	}
+
+	public void run()
+	{
+		registNext();
+	}
+
+	public void registNext()
+	{
+		int end = numNode;
+		if (registChunk > 0 && next + registChunk < numNode)
 		{
-			e.printStackTrace();
+			end = next + registChunk;
 		}
-		Iterator<Comparator> it = ts.iterator();
-		while (it.hasNext())
+		for (; next < end; next++)
 		{
-			Comparator comp = it.next();
-			Node node = (Node)Network.get(comp.id);
+			long wait = order[next] / numNode;
+			Node node = Network.get((int)(order[next] % numNode));
 			PeerProtocol pp = (PeerProtocol)node.getProtocol(pid);
-			pp.regist(comp.wait);
+			pp.regist(wait);
+		}
+		if (next < numNode)
+		{
+			long wait = order[next] / numNode;
+			Message msg = new Message(-1, 0, MsgType.RUN, this);
+			EDSimulator.add(wait - CommonState.getTime(), msg, Network.get(0), pid);
+		}
+		else
+		{
+			order = null;
 		}
-		return false;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+import java.io.*;
+
+/* Converts a text wait time file (one number per line, blank lines skipped)
+ * into the binary format read by TrafficGene (one long per node), and checks
+ * that TrafficGene reads the same wait times from both files, usage:
+ * java WaitTimeConverter textWaitTimeFile binaryWaitTimeFile
+ */
+public class WaitTimeConverter 
+{
+	/* returns the number of wait times written */
+	public static int convert(String textFile, String binaryFile) throws IOException
+	{
+		int num = 0;
+		BufferedReader br = new BufferedReader(new FileReader(textFile));
+		DataOutputStream dos = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(binaryFile)));
+		try
+		{
+			String line = br.readLine();
+			while (line != null)
+			{
+				if (!line.trim().isEmpty())
+				{
+					dos.writeLong(Long.parseLong(line.trim()));
+					num++;
+				}
+				line = br.readLine();
+			}
+		}
+		finally
+		{
+			br.close();
+			dos.close();
+		}
+		return num;
+	}
+	
+	/* the text file and the binary file give the same wait times */
+	public static void check(String textFile, String binaryFile, int num) throws IOException
+	{
+		long[] text = TrafficGene.readWaitTime(textFile, "text", num);
+		long[] binary = TrafficGene.readWaitTime(binaryFile, "binary", num);
+		for (int i = 0; i < num; i++)
+		{
+			if (text[i] != binary[i])
+			{
+				throw new IOException("The wait time of node " + i + " is " + text[i] + 
+						" in " + textFile + " but " + binary[i] + " in " + binaryFile);
+			}
+		}
+	}
+	
+	public static void main(String[] args)
+	{
+		if (args.length != 2)
+		{
+			System.out.println("Usage: java WaitTimeConverter textWaitTimeFile binaryWaitTimeFile");
+			return;
+		}
+		try
+		{
+			check(args[0], args[1], convert(args[0], args[1]));
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
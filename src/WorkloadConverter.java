@@ -0,0 +1,77 @@
+import java.io.*;
+import java.util.*;
+
+/* Converts a text workload into the binary format read by
+ * BinaryWorkloadSource, usage:
+ * java WorkloadConverter textWorkloadFile binaryWorkloadFile
+ */
+public class WorkloadConverter 
+{
+	public static void convert(String textFile, String binaryFile) throws IOException
+	{
+		TextWorkloadSource src = new TextWorkloadSource(textFile);
+		int numJobs = src.numJobs();
+		int[] cmdIds = new int[numJobs];
+		ArrayList<JobDesc> cmds = new ArrayList<JobDesc>();
+		HashMap<String, Integer> cmdIndex = new HashMap<String, Integer>();
+		for (int i = 0; i < numJobs; i++)
+		{
+			JobDesc desc = src.getJob(i);
+			String cmdKey = desc.prefix + "\n" + desc.dir + "\n" + desc.cmd + "\n" + desc.argv;
+			Integer cmdId = cmdIndex.get(cmdKey);
+			if (cmdId == null)
+			{
+				cmdId = cmds.size();
+				cmdIndex.put(cmdKey, cmdId);
+				cmds.add(desc);
+			}
+			cmdIds[i] = cmdId;
+		}
+		
+		DataOutputStream dos = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(binaryFile)));
+		try
+		{
+			dos.writeInt(BinaryWorkloadSource.MAGIC);
+			dos.writeInt(BinaryWorkloadSource.VERSION);
+			dos.writeInt(numJobs);
+			dos.writeInt(cmds.size());
+			for (JobDesc cmd : cmds)
+			{
+				dos.writeUTF(cmd.prefix);
+				dos.writeUTF(cmd.dir);
+				dos.writeUTF(cmd.cmd);
+				dos.writeUTF(cmd.argv);
+			}
+			for (int i = 0; i < numJobs; i++)
+			{
+				JobDesc desc = src.getJob(i);
+				dos.writeInt(desc.numNodeRequired);
+				dos.writeInt(desc.numCoresRequiredPerNode);
+				dos.writeLong(desc.duration);
+				dos.writeInt(cmdIds[i]);
+			}
+		}
+		finally
+		{
+			dos.close();
+		}
+	}
+	
+	public static void main(String[] args)
+	{
+		if (args.length != 2)
+		{
+			System.out.println("Usage: java WorkloadConverter textWorkloadFile binaryWorkloadFile");
+			return;
+		}
+		try
+		{
+			convert(args[0], args[1]);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,11 @@
+/* The jobs of a workload, indexed by their position in the workload. 
+ * Controller i handles the jobs from its jobStartIndex on, and asks for 
+ * them one at a time when it starts them, so a source does not need to 
+ * keep the whole workload on the heap.
+ */
+public interface WorkloadSource 
+{
+	public int numJobs();
+	
+	public JobDesc getJob(int index);
+}